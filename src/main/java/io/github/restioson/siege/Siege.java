@@ -2,7 +2,9 @@ package io.github.restioson.siege;
 
 import io.github.restioson.siege.game.SiegeConfig;
 import io.github.restioson.siege.game.SiegeWaiting;
+import io.github.restioson.siege.game.map.SiegeMapLoader;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.minecraft.util.Identifier;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,5 +21,7 @@ public class Siege implements ModInitializer {
                 SiegeConfig.CODEC,
                 SiegeWaiting::open
         );
+
+        ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> SiegeMapLoader.clearSharedTemplates());
     }
 }
@@ -0,0 +1,125 @@
+package io.github.restioson.siege.game;
+
+import io.github.restioson.siege.game.map.SiegeFlag;
+import io.github.restioson.siege.game.map.SiegeGate;
+import io.github.restioson.siege.game.map.SiegeKitStandLocation;
+import io.github.restioson.siege.game.map.SiegeMap;
+import io.github.restioson.siege.game.map.SiegeSpawn;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+import org.jetbrains.annotations.Nullable;
+import xyz.nucleoid.map_templates.BlockBounds;
+
+import java.util.Comparator;
+
+// Loads the chunks that players are teleported to at the start of the match and when respawning, along with those
+// around kit stands and gates, while the lobby is waiting, so that they are already generated once the match starts.
+// The tickets are released when the lobby ends, and players' own tickets take over from there.
+public final class SiegeChunkPrewarmer {
+    private static final ChunkTicketType<ChunkPos> TICKET = ChunkTicketType.create("siege_prewarm", Comparator.comparingLong(ChunkPos::toLong));
+    // Holds each chunk at the full level only, without ticking it or loading its neighbours
+    private static final int TICKET_RADIUS = 0;
+
+    private final ServerWorld world;
+    private final long[] chunks;
+    private int loaded;
+
+    private SiegeChunkPrewarmer(ServerWorld world, long[] chunks) {
+        this.world = world;
+        this.chunks = chunks;
+    }
+
+    public static SiegeChunkPrewarmer start(ServerWorld world, SiegeMap map) {
+        LongSet chunks = new LongOpenHashSet();
+
+        addSpawn(chunks, map.waitingSpawn);
+        for (SiegeFlag flag : map.flags) {
+            addSpawn(chunks, flag.attackerRespawn);
+            addSpawn(chunks, flag.defenderRespawn);
+        }
+
+        for (SiegeKitStandLocation kitStand : map.kitStands) {
+            Vec3d pos = kitStand.pos();
+            chunks.add(ChunkPos.toLong(ChunkSectionPos.getSectionCoord(pos.x), ChunkSectionPos.getSectionCoord(pos.z)));
+        }
+
+        for (SiegeGate gate : map.gates) {
+            addBounds(chunks, gate.gateOpen);
+            addBounds(chunks, gate.portcullis);
+            if (gate.brace != null) {
+                addBounds(chunks, gate.brace);
+            }
+        }
+
+        ServerChunkManager chunkManager = world.getChunkManager();
+        for (long chunk : chunks) {
+            ChunkPos pos = new ChunkPos(chunk);
+            chunkManager.addTicket(TICKET, pos, TICKET_RADIUS, pos);
+        }
+
+        return new SiegeChunkPrewarmer(world, chunks.toLongArray());
+    }
+
+    private static void addSpawn(LongSet chunks, @Nullable SiegeSpawn spawn) {
+        if (spawn != null) {
+            addBounds(chunks, spawn.bounds());
+        }
+    }
+
+    private static void addBounds(LongSet chunks, BlockBounds bounds) {
+        BlockPos min = bounds.min();
+        BlockPos max = bounds.max();
+
+        for (int z = min.getZ() >> 4; z <= max.getZ() >> 4; z++) {
+            for (int x = min.getX() >> 4; x <= max.getX() >> 4; x++) {
+                chunks.add(ChunkPos.toLong(x, z));
+            }
+        }
+    }
+
+    // Counts the chunks which have finished loading, returning whether all of them have
+    public boolean update() {
+        if (this.isDone()) {
+            return true;
+        }
+
+        ServerChunkManager chunkManager = this.world.getChunkManager();
+
+        int loaded = 0;
+        for (long chunk : this.chunks) {
+            if (chunkManager.isChunkLoaded(ChunkPos.getPackedX(chunk), ChunkPos.getPackedZ(chunk))) {
+                loaded++;
+            }
+        }
+
+        this.loaded = loaded;
+        return this.isDone();
+    }
+
+    public void release() {
+        ServerChunkManager chunkManager = this.world.getChunkManager();
+        for (long chunk : this.chunks) {
+            ChunkPos pos = new ChunkPos(chunk);
+            chunkManager.removeTicket(TICKET, pos, TICKET_RADIUS, pos);
+        }
+    }
+
+    public boolean isDone() {
+        return this.loaded >= this.chunks.length;
+    }
+
+    public int loaded() {
+        return this.loaded;
+    }
+
+    public int total() {
+        return this.chunks.length;
+    }
+}
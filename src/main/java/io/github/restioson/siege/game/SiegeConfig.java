@@ -10,13 +10,20 @@ public final record SiegeConfig(
         SiegeMapConfig map,
         int timeLimitMins,
         boolean recapture,
-        boolean defenderEnderPearl
+        boolean defenderEnderPearl,
+        int tickInterval,
+        float gateRowsPerTick,
+        // A soft budget: a gate only moves while some is left, but its move may then overshoot it
+        int gateBlocksPerTick
 ) {
     public static final Codec<SiegeConfig> CODEC = RecordCodecBuilder.create(instance -> instance.group(
             PlayerConfig.CODEC.fieldOf("players").forGetter(config -> config.players),
             SiegeMapConfig.CODEC.fieldOf("map").forGetter(config -> config.map),
             Codec.INT.fieldOf("time_limit_mins").forGetter(config -> config.timeLimitMins),
             Codec.BOOL.fieldOf("recapture").orElse(false).forGetter(config -> config.recapture),
-            Codec.BOOL.fieldOf("defender_ender_pearl").orElse(false).forGetter(config -> config.defenderEnderPearl)
+            Codec.BOOL.fieldOf("defender_ender_pearl").orElse(false).forGetter(config -> config.defenderEnderPearl),
+            Codec.intRange(1, 20).fieldOf("tick_interval").orElse(20).forGetter(config -> config.tickInterval),
+            Codec.floatRange(0.01f, 16.0f).fieldOf("gate_rows_per_tick").orElse(0.05f).forGetter(config -> config.gateRowsPerTick),
+            Codec.intRange(1, 65536).fieldOf("gate_blocks_per_tick").orElse(512).forGetter(config -> config.gateBlocksPerTick)
     ).apply(instance, SiegeConfig::new));
 }
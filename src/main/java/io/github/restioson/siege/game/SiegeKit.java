@@ -81,7 +81,7 @@ public enum SiegeKit {
         switch (participant.kit) {
             case ARCHER -> {
                 int arrowsRequired = SiegeKit.ARROWS - inventory.count(Items.ARROW);
-                int arrowsToGive = participant.tryDecrementResource(SiegePersonalResource.WOOD, arrowsRequired);
+                int arrowsToGive = participant.tryDecrementResource(SiegePersonalResource.WOOD, arrowsRequired, world.getTime());
                 inventory.offerOrDrop(ItemStackBuilder.of(Items.ARROW).setCount(arrowsToGive).build());
                 if (arrowsRequired != 0 && arrowsToGive == 0) {
                     return "You have no more arrows right now!";
@@ -90,7 +90,7 @@ public enum SiegeKit {
             case CONSTRUCTOR -> {
                 Item planks = SiegeTeams.planksForTeam(participant.team.key());
                 int planksRequired = SiegeKit.PLANKS - inventory.count(planks);
-                int planksToGive = participant.tryDecrementResource(SiegePersonalResource.WOOD, planksRequired);
+                int planksToGive = participant.tryDecrementResource(SiegePersonalResource.WOOD, planksRequired, world.getTime());
                 if (planksRequired == SiegeKit.PLANKS) {
                     player.equipStack(EquipmentSlot.OFFHAND, ItemStackBuilder.of(planks).setCount(planksToGive).build());
                 } else {
@@ -99,7 +99,7 @@ public enum SiegeKit {
             }
             case DEMOLITIONER -> {
                 int tntRequired = SiegeKit.TNT - inventory.count(Items.TNT);
-                int tntToGive = participant.tryDecrementResource(SiegePersonalResource.TNT, tntRequired);
+                int tntToGive = participant.tryDecrementResource(SiegePersonalResource.TNT, tntRequired, world.getTime());
                 inventory.offerOrDrop(ItemStackBuilder.of(Items.TNT).setCount(tntToGive).build());
                 if (tntRequired != 0 && tntToGive == 0) {
                     return "You have no TNT right now!";
@@ -122,8 +122,8 @@ public enum SiegeKit {
         int wood = inventory.count(Items.ARROW) + inventory.count(SiegeTeams.planksForTeam(SiegeTeams.ATTACKERS.key()))
                 + inventory.count(SiegeTeams.planksForTeam(SiegeTeams.DEFENDERS.key()));
         int tnt = inventory.count(Items.TNT);
-        participant.incrementResource(SiegePersonalResource.WOOD, wood);
-        participant.incrementResource(SiegePersonalResource.TNT, tnt);
+        participant.incrementResource(SiegePersonalResource.WOOD, wood, world.getTime());
+        participant.incrementResource(SiegePersonalResource.TNT, tnt, world.getTime());
 
         inventory.clear();
         player.clearStatusEffects();
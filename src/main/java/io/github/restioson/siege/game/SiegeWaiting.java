@@ -8,10 +8,13 @@ import io.github.restioson.siege.game.map.SiegeMapLoader;
 import net.minecraft.entity.damage.DamageSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
 import net.minecraft.util.ActionResult;
+import net.minecraft.util.Formatting;
 import net.minecraft.world.GameMode;
 import xyz.nucleoid.fantasy.RuntimeWorldConfig;
 import xyz.nucleoid.plasmid.game.GameOpenContext;
+import xyz.nucleoid.plasmid.game.GameOpenException;
 import xyz.nucleoid.plasmid.game.GameOpenProcedure;
 import xyz.nucleoid.plasmid.game.GameResult;
 import xyz.nucleoid.plasmid.game.GameSpace;
@@ -24,6 +27,9 @@ import xyz.nucleoid.plasmid.game.player.PlayerOffer;
 import xyz.nucleoid.plasmid.game.player.PlayerOfferResult;
 import xyz.nucleoid.stimuli.event.player.PlayerDeathEvent;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 public class SiegeWaiting {
     private final ServerWorld world;
     private final GameSpace gameSpace;
@@ -31,6 +37,7 @@ public class SiegeWaiting {
     private final SiegeConfig config;
 
     private final TeamSelectionLobby teamSelection;
+    private final SiegeChunkPrewarmer prewarmer;
 
     private SiegeWaiting(ServerWorld world, GameSpace gameSpace, SiegeMap map, SiegeConfig config, TeamSelectionLobby teamSelection) {
         this.world = world;
@@ -38,12 +45,13 @@ public class SiegeWaiting {
         this.map = map;
         this.config = config;
         this.teamSelection = teamSelection;
+        this.prewarmer = SiegeChunkPrewarmer.start(world, map);
     }
 
     public static GameOpenProcedure open(GameOpenContext<SiegeConfig> context) {
         var config = context.config();
         SiegeMapLoader generator = new SiegeMapLoader(config.map());
-        SiegeMap map = generator.create(context.server());
+        SiegeMap map = awaitMap(generator.createAsync(context.server()));
 
         RuntimeWorldConfig worldConfig = new RuntimeWorldConfig()
                 .setGenerator(map.asGenerator(context.server()))
@@ -56,12 +64,45 @@ public class SiegeWaiting {
 
             SiegeWaiting waiting = new SiegeWaiting(world, activity.getGameSpace(), map, config, teamSelection);
 
+            activity.listen(GameActivityEvents.TICK, waiting::tick);
             activity.listen(GameActivityEvents.REQUEST_START, waiting::requestStart);
+            activity.listen(GameActivityEvents.DISABLE, waiting.prewarmer::release);
             activity.listen(GamePlayerEvents.OFFER, waiting::offerPlayer);
             activity.listen(PlayerDeathEvent.EVENT, waiting::onPlayerDeath);
         });
     }
 
+    // The lobby can only be opened once the map is ready, so wait for it here, off the server thread
+    private static SiegeMap awaitMap(CompletableFuture<SiegeMap> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof GameOpenException openException) {
+                throw openException;
+            }
+            throw new GameOpenException(Text.literal("Failed to load map"), e.getCause());
+        }
+    }
+
+    private void tick() {
+        if (this.prewarmer.isDone() || this.world.getTime() % 20 != 0) {
+            return;
+        }
+
+        if (this.prewarmer.update()) {
+            this.gameSpace.getPlayers().sendActionBar(Text.literal("The map is ready!").formatted(Formatting.GREEN));
+        } else {
+            this.gameSpace.getPlayers().sendActionBar(
+                    Text.literal("Preparing the map: ")
+                            .append(Integer.toString(this.prewarmer.loaded()))
+                            .append("/")
+                            .append(Integer.toString(this.prewarmer.total()))
+                            .append(" chunks")
+                            .formatted(Formatting.YELLOW)
+            );
+        }
+    }
+
     private GameResult requestStart() {
         Multimap<GameTeamKey, ServerPlayerEntity> players = HashMultimap.create();
         this.teamSelection.allocate(this.gameSpace.getPlayers(), players::put);
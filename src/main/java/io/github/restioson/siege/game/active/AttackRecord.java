@@ -1,24 +1,23 @@
 package io.github.restioson.siege.game.active;
 
-import net.minecraft.server.network.ServerPlayerEntity;
-import xyz.nucleoid.plasmid.util.PlayerRef;
+import org.jetbrains.annotations.Nullable;
 
+// The last participant to attack a player, kept by each participant and overwritten in place on every hit
 public class AttackRecord {
     public static final long EXPIRE_TIME = 20 * 5;
 
-    public final PlayerRef player;
-    private final long expireTime;
+    @Nullable
+    private SiegeOccupancy.Occupant attacker;
+    private long expireTime;
 
-    public AttackRecord(PlayerRef player, long time) {
-        this.player = player;
+    public void set(SiegeOccupancy.Occupant attacker, long time) {
+        this.attacker = attacker;
         this.expireTime = time + EXPIRE_TIME;
     }
 
-    public static AttackRecord fromAttacker(ServerPlayerEntity player) {
-        return new AttackRecord(PlayerRef.of(player), player.world.getTime());
-    }
-
-    public boolean isValid(long time) {
-        return time < this.expireTime;
+    // The attacker, if they attacked recently enough to be credited
+    @Nullable
+    public SiegeOccupancy.Occupant get(long time) {
+        return time < this.expireTime ? this.attacker : null;
     }
 }
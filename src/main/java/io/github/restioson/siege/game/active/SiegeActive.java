@@ -2,15 +2,13 @@ package io.github.restioson.siege.game.active;
 
 import com.google.common.collect.Multimap;
 import eu.pb4.sgui.api.gui.SimpleGui;
+import io.github.restioson.siege.Siege;
 import io.github.restioson.siege.entity.SiegeKitStandEntity;
 import io.github.restioson.siege.game.SiegeConfig;
 import io.github.restioson.siege.game.SiegeKit;
 import io.github.restioson.siege.game.SiegeSpawnLogic;
 import io.github.restioson.siege.game.SiegeTeams;
 import io.github.restioson.siege.game.map.*;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMaps;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.minecraft.block.*;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.damage.DamageSource;
@@ -39,7 +37,6 @@ import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.GameMode;
 import net.minecraft.world.explosion.Explosion;
 import org.jetbrains.annotations.Nullable;
-import xyz.nucleoid.map_templates.BlockBounds;
 import xyz.nucleoid.plasmid.game.GameActivity;
 import xyz.nucleoid.plasmid.game.GameCloseReason;
 import xyz.nucleoid.plasmid.game.GameSpace;
@@ -78,14 +75,17 @@ public class SiegeActive {
 
     final SiegeTeams teams;
 
-    public final Object2ObjectMap<PlayerRef, SiegePlayer> participants;
+    public final SiegeOccupancy occupancy;
     public final List<WarpingPlayer> warpingPlayers;
     final SiegeStageManager stageManager;
 
     final SiegeSidebar sidebar;
 
+    final SiegeTickScheduler scheduler;
+    final SiegeCueQueue cues;
     final SiegeCaptureLogic captureLogic;
     final SiegeGateLogic gateLogic;
+    final SiegeGateAnimator gateAnimator;
 
     public static int TNT_GATE_DAMAGE = 15;
 
@@ -94,14 +94,15 @@ public class SiegeActive {
         this.gameSpace = activity.getGameSpace();
         this.config = config;
         this.map = map;
-        this.participants = new Object2ObjectOpenHashMap<>();
+        this.occupancy = new SiegeOccupancy(map);
         this.warpingPlayers = new LinkedList<>();
 
         this.teams = new SiegeTeams(activity);
 
         for (GameTeamKey key : players.keySet()) {
             for (ServerPlayerEntity player : players.get(key)) {
-                this.participants.put(PlayerRef.of(player), new SiegePlayer(SiegeTeams.byKey(key)));
+                SiegePlayer participant = new SiegePlayer(SiegeTeams.byKey(key));
+                this.occupancy.add(player, participant);
                 this.teams.addPlayer(player, key);
             }
         }
@@ -110,8 +111,11 @@ public class SiegeActive {
 
         this.sidebar = new SiegeSidebar(this, widgets);
 
+        this.scheduler = new SiegeTickScheduler(config.tickInterval());
+        this.cues = new SiegeCueQueue(this);
         this.captureLogic = new SiegeCaptureLogic(this);
         this.gateLogic = new SiegeGateLogic(this);
+        this.gateAnimator = new SiegeGateAnimator(this, config.gateRowsPerTick(), config.gateBlocksPerTick());
     }
 
     public static void open(ServerWorld world, GameSpace gameSpace, SiegeMap map, SiegeConfig config, Multimap<GameTeamKey, ServerPlayerEntity> players) {
@@ -162,14 +166,12 @@ public class SiegeActive {
     }
 
     private void onExplosion(Explosion explosion, boolean particles) {
-        gate:
-        for (SiegeGate gate : this.map.gates) {
-            for (BlockPos pos : explosion.getAffectedBlocks()) {
-                if (!gate.bashedOpen && gate.health > 0 && gate.portcullis.contains(pos)) {
-                    gate.health = Math.max(0, gate.health - TNT_GATE_DAMAGE);
-                    gate.timeOfLastBash = this.world.getTime();
-                    break gate;
-                }
+        for (BlockPos pos : explosion.getAffectedBlocks()) {
+            SiegeGate gate = this.gateLogic.damageableGateAt(pos);
+            if (gate != null) {
+                gate.health = Math.max(0, gate.health - TNT_GATE_DAMAGE);
+                gate.timeOfLastBash = this.world.getTime();
+                break;
             }
         }
 
@@ -203,12 +205,14 @@ public class SiegeActive {
 
     @Nullable
     public SiegePlayer participant(ServerPlayerEntity player) {
-        return this.participant(PlayerRef.of(player));
+        SiegeOccupancy.Occupant occupant = this.occupancy.get(player);
+        return occupant != null ? occupant.participant : null;
     }
 
     @Nullable
     public SiegePlayer participant(PlayerRef player) {
-        return this.participants.get(player);
+        SiegeOccupancy.Occupant occupant = this.occupancy.get(player);
+        return occupant != null ? occupant.participant : null;
     }
 
     private void onOpen() {
@@ -218,39 +222,59 @@ public class SiegeActive {
                 "sprinting and hitting them as a soldier or shieldbearer. They can be braced and repaired by placing" +
                 "wood near them as a constructor.";
 
-        for (Map.Entry<PlayerRef, SiegePlayer> entry : this.participants.entrySet()) {
-            entry.getKey().ifOnline(this.world, p -> {
-                Text text = Text.literal(help).formatted(Formatting.GOLD);
-                p.sendMessage(text, false);
+        for (SiegeOccupancy.Occupant occupant : this.occupancy.occupants()) {
+            ServerPlayerEntity p = occupant.entity(this.world);
+            if (p == null) {
+                continue;
+            }
 
-                if (this.config.recapture()) {
-                    p.sendMessage(Text.literal("Defenders may also capture attacker's flags.").formatted(Formatting.GOLD), false);
-                }
+            Text text = Text.literal(help).formatted(Formatting.GOLD);
+            p.sendMessage(text, false);
 
-                if (this.config.defenderEnderPearl() && entry.getValue().team == SiegeTeams.DEFENDERS) {
-                    p.sendMessage(
-                            Text.literal("You can use your ender pearl to warp to a flag that is under attack.")
-                                    .formatted(Formatting.GOLD),
-                            false
-                    );
-                }
+            if (this.config.recapture()) {
+                p.sendMessage(Text.literal("Defenders may also capture attacker's flags.").formatted(Formatting.GOLD), false);
+            }
+
+            if (this.config.defenderEnderPearl() && occupant.team() == SiegeTeams.DEFENDERS) {
+                p.sendMessage(
+                        Text.literal("You can use your ender pearl to warp to a flag that is under attack.")
+                                .formatted(Formatting.GOLD),
+                        false
+                );
+            }
 
-                this.spawnParticipant(p, this.map.getFirstSpawn(entry.getValue().team));
-            });
+            this.spawnParticipant(p, this.map.getFirstSpawn(occupant.team()));
         }
 
         this.stageManager.onOpen(this.world.getTime(), this.config);
     }
 
     private void onClose() {
+        int captureBarPackets = 0;
         for (SiegeFlag flag : this.map.flags) {
             flag.closeCaptureBar();
+            captureBarPackets += flag.captureBarPackets;
+        }
+
+        Siege.LOGGER.info("Sent {} capture bar packets this match", captureBarPackets);
+
+        for (SiegeGate gate : this.map.gates) {
+            GateSlider slider = gate.slider;
+            if (slider.moves > 0) {
+                Siege.LOGGER.info(
+                        "Gate at {} moved {} times and wrote {} blocks this match ({} per move)",
+                        gate.flag.name,
+                        slider.moves,
+                        slider.blocksWritten,
+                        slider.blocksWritten / slider.moves
+                );
+            }
         }
     }
 
     private PlayerOfferResult offerPlayer(PlayerOffer offer) {
         var player = offer.player();
-        if (!this.participants.containsKey(PlayerRef.of(player))) {
+        if (this.occupancy.get(player) == null) {
             this.allocateParticipant(player);
         }
 
@@ -262,15 +286,22 @@ public class SiegeActive {
     private void allocateParticipant(ServerPlayerEntity player) {
         GameTeamKey smallestTeam = this.teams.getSmallestTeam();
         SiegePlayer participant = new SiegePlayer(SiegeTeams.byKey(smallestTeam));
-        this.participants.put(PlayerRef.of(player), participant);
+        this.occupancy.add(player, participant);
         this.teams.addPlayer(player, smallestTeam);
     }
 
     private void removePlayer(ServerPlayerEntity player) {
-        SiegePlayer participant = this.participants.remove(PlayerRef.of(player));
-        if (participant != null) {
-            this.teams.removePlayer(player, participant.team.key());
+        SiegeOccupancy.Occupant occupant = this.occupancy.get(player);
+        if (occupant == null) {
+            return;
+        }
+
+        for (SiegeFlag flag : this.map.flags) {
+            flag.removeCaptureBarViewer(occupant.index);
         }
+
+        this.occupancy.remove(occupant);
+        this.teams.removePlayer(player, occupant.team().key());
     }
 
     private ActionResult onDropItem(PlayerEntity player, int slot, ItemStack stack) {
@@ -293,10 +324,8 @@ public class SiegeActive {
 
         if (participant.kit == SiegeKit.CONSTRUCTOR && block != Blocks.TNT) {
             // TNT may be placed anyway
-            for (BlockBounds noBuildRegion : this.map.noBuildRegions) {
-                if (noBuildRegion.contains(blockPos)) {
-                    return ActionResult.FAIL;
-                }
+            if (this.occupancy.isNoBuildRegion(blockPos)) {
+                return ActionResult.FAIL;
             }
 
             return this.gateLogic.maybeBraceGate(blockPos, player, ctx);
@@ -321,47 +350,52 @@ public class SiegeActive {
         }
 
         SiegePlayer participant = this.participant(player);
-        Item inHand = player.getStackInHand(hand).getItem();
-        if (participant != null) {
-            pos.offset(hitResult.getSide());
-            BlockState state = this.world.getBlockState(pos);
-            if (state.getBlock() instanceof EnderChestBlock) {
-                String error = participant.kit.restock(player, participant, this.world, this.config);
+        if (participant == null) {
+            return ActionResult.PASS;
+        }
 
-                if (error == null) {
-                    player.sendMessage(Text.literal("Items restocked!").formatted(Formatting.DARK_GREEN, Formatting.BOLD), true);
-                } else {
-                    player.sendMessage(Text.literal(error).formatted(Formatting.RED, Formatting.BOLD), true);
-                }
-                return ActionResult.FAIL;
-            } else if (state.getBlock() instanceof DoorBlock) {
-                return ActionResult.PASS;
-            } else if (state.getBlock() instanceof BlockWithEntity) {
-                return ActionResult.FAIL;
-            } else if (inHand == Items.STONE_AXE || inHand == Items.IRON_SWORD) {
-                if (this.gateLogic.maybeBash(pos, player, participant, this.world.getTime()) == ActionResult.FAIL) {
-                    return ActionResult.FAIL;
-                }
+        // The block decides the outcome whatever is held, so it is read first and the held item only once it's needed
+        Block block = this.world.getBlockState(pos).getBlock();
+        if (block instanceof EnderChestBlock) {
+            String error = participant.kit.restock(player, participant, this.world, this.config);
+
+            if (error == null) {
+                player.sendMessage(Text.literal("Items restocked!").formatted(Formatting.DARK_GREEN, Formatting.BOLD), true);
+            } else {
+                player.sendMessage(Text.literal(error).formatted(Formatting.RED, Formatting.BOLD), true);
             }
+            return ActionResult.FAIL;
+        } else if (block instanceof DoorBlock) {
+            return ActionResult.PASS;
+        } else if (block instanceof BlockWithEntity) {
+            return ActionResult.FAIL;
+        }
 
-            if (inHand == Items.WOODEN_AXE || inHand == Items.STONE_AXE) {
+        Item inHand = player.getStackInHand(hand).getItem();
+        if (inHand == Items.STONE_AXE || inHand == Items.IRON_SWORD) {
+            if (this.gateLogic.maybeBash(pos, player, participant, this.world.getTime()) == ActionResult.FAIL) {
                 return ActionResult.FAIL;
             }
+        }
 
-            return ActionResult.PASS;
+        if (inHand == Items.WOODEN_AXE || inHand == Items.STONE_AXE) {
+            return ActionResult.FAIL;
         }
 
         return ActionResult.PASS;
     }
 
     private TypedActionResult<ItemStack> onUseItem(ServerPlayerEntity player, Hand hand) {
-        SiegePlayer participant = this.participant(player);
         ItemStack stack = player.getStackInHand(hand);
-        Item item = stack.getItem();
+        if (!stack.isOf(Items.ENDER_PEARL)) {
+            return TypedActionResult.pass(stack);
+        }
+
+        SiegePlayer participant = this.participant(player);
         if (participant != null) {
             ItemCooldownManager cooldownManager = player.getItemCooldownManager();
 
-            if (item == Items.ENDER_PEARL && !cooldownManager.isCoolingDown(Items.ENDER_PEARL)) {
+            if (!cooldownManager.isCoolingDown(Items.ENDER_PEARL)) {
                 SimpleGui ui = WarpSelectionUi.create(player, this.map, participant.team, selectedFlag -> {
                     if (cooldownManager.isCoolingDown(Items.ENDER_PEARL)) {
                         return;
@@ -384,19 +418,20 @@ public class SiegeActive {
 
     private ActionResult onPlayerDamage(ServerPlayerEntity player, DamageSource source, float v) {
         SiegePlayer participant = this.participant(player);
-        long time = this.world.getTime();
+        if (participant == null) {
+            return ActionResult.PASS;
+        }
 
-        if (participant != null && this.world.getTime() < participant.timeOfSpawn + 5 * 20 && !participant.attackedThisLife) {
+        long time = this.world.getTime();
+        if (time < participant.timeOfSpawn + 5 * 20 && !participant.attackedThisLife) {
             return ActionResult.FAIL;
         }
 
-        if (participant != null && source.getAttacker() != null && source.getAttacker() instanceof ServerPlayerEntity) {
-            PlayerRef attacker = PlayerRef.of((ServerPlayerEntity) source.getAttacker());
-            participant.lastTimeWasAttacked = new AttackRecord(attacker, time);
-
-            SiegePlayer attackerParticipant = this.participant(attacker);
-            if (attackerParticipant != null) {
-                attackerParticipant.attackedThisLife = true;
+        if (source.getAttacker() instanceof ServerPlayerEntity attackerPlayer) {
+            SiegeOccupancy.Occupant attacker = this.occupancy.get(attackerPlayer);
+            if (attacker != null) {
+                participant.lastTimeWasAttacked.set(attacker, time);
+                attacker.participant.attackedThisLife = true;
             }
         }
 
@@ -420,15 +455,23 @@ public class SiegeActive {
         MutableText eliminationMessage = Text.literal(" was killed by ");
         SiegePlayer attacker = null;
 
+        // The attacker only counts while they are still the registered occupant, so a player who left and rejoined isn't
+        // credited through their old, removed entry
+        SiegeOccupancy.Occupant lastAttacker = participant != null ? participant.attacker(time) : null;
+        if (lastAttacker != null && this.occupancy.get(lastAttacker.ref) != lastAttacker) {
+            lastAttacker = null;
+        }
+        ServerPlayerEntity lastAttackerPlayer = lastAttacker != null ? lastAttacker.entity(world) : null;
+
         if (source.getAttacker() != null) {
             eliminationMessage.append(source.getAttacker().getDisplayName());
 
-            if (source.getAttacker() instanceof ServerPlayerEntity) {
-                attacker = this.participant((ServerPlayerEntity) source.getAttacker());
+            if (source.getAttacker() instanceof ServerPlayerEntity attackerPlayer) {
+                attacker = this.participant(attackerPlayer);
             }
-        } else if (participant != null && participant.attacker(time, world) != null) {
-            eliminationMessage.append(participant.attacker(time, world).getDisplayName());
-            attacker = this.participant(participant.attacker(time, world));
+        } else if (lastAttackerPlayer != null) {
+            eliminationMessage.append(lastAttackerPlayer.getDisplayName());
+            attacker = lastAttacker.participant;
         } else if (source == DamageSource.DROWN) {
             eliminationMessage.append("forgetting to just keep swimming");
         } else {
@@ -467,7 +510,7 @@ public class SiegeActive {
             participant.timeOfDeath = this.world.getTime();
             int wood = inventory.count(Items.ARROW) + inventory.count(SiegeTeams.planksForTeam(SiegeTeams.ATTACKERS.key()))
                     + inventory.count(SiegeTeams.planksForTeam(SiegeTeams.DEFENDERS.key()));
-            participant.incrementResource(SiegePersonalResource.WOOD, wood);
+            participant.incrementResource(SiegePersonalResource.WOOD, wood, participant.timeOfDeath);
         }
 
         inventory.clear();
@@ -532,16 +575,19 @@ public class SiegeActive {
             return;
         }
 
-        if (time % 20 == 0) {
-            this.captureLogic.tick(this.world, 20);
-            this.gateLogic.tick();
+        this.occupancy.update(this.world);
+
+        this.captureLogic.tick(this.scheduler, time);
+        this.gateLogic.tick(this.scheduler, time);
+        this.gateAnimator.tick(time);
+        this.cues.tick(time);
 
+        if (SiegeTickScheduler.isPhase(time, SiegeTickScheduler.SECOND, SiegeTickScheduler.SIDEBAR_PHASE)) {
             this.sidebar.update(time);
-            this.tickWarpingPlayers();
+        }
 
-            if (time % (20 * 2) == 0) {
-                this.tickResources(time);
-            }
+        if (SiegeTickScheduler.isPhase(time, SiegeTickScheduler.SECOND, SiegeTickScheduler.WARP_PHASE)) {
+            this.tickWarpingPlayers();
         }
 
         this.tickDead(this.world, time);
@@ -555,13 +601,14 @@ public class SiegeActive {
 
     private void tickWarpingPlayers() {
         this.warpingPlayers.removeIf(warpingPlayer -> {
-            ServerPlayerEntity player = warpingPlayer.player.getEntity(this.world);
+            SiegeOccupancy.Occupant occupant = this.occupancy.get(warpingPlayer.player);
+            ServerPlayerEntity player = occupant != null ? occupant.player : null;
 
             if (player == null) {
                 return true;
             }
 
-            if (player.getBlockPos() != warpingPlayer.pos) {
+            if (!occupant.pos.equals(warpingPlayer.pos)) {
                 player.sendMessage(Text.literal("Warp cancelled because you moved!").formatted(Formatting.RED), true);
                 player.playSound(SoundEvents.ENTITY_VILLAGER_NO, SoundCategory.NEUTRAL, 1.0F, 1.0F);
                 return true;
@@ -580,34 +627,24 @@ public class SiegeActive {
         });
     }
 
-    private void tickResources(long time) {
-        for (SiegePlayer player : this.participants.values()) {
-            player.incrementResource(SiegePersonalResource.WOOD, 1);
-
-            if (time % (60 * 20) == 0) {
-                player.incrementResource(SiegePersonalResource.TNT, 1);
-            }
-        }
-    }
-
     private void tickDead(ServerWorld world, long time) {
-        for (Object2ObjectMap.Entry<PlayerRef, SiegePlayer> entry : Object2ObjectMaps.fastIterable(this.participants)) {
-            PlayerRef ref = entry.getKey();
-            SiegePlayer state = entry.getValue();
-            ref.ifOnline(world, p -> {
-                if (p.isSpectator()) {
-                    int sec = 5 - (int) Math.floor((time - state.timeOfDeath) / 20.0f);
-
-                    if (sec > 0 && (time - state.timeOfDeath) % 20 == 0) {
-                        Text text = Text.literal(String.format("Respawning in %ds", sec)).formatted(Formatting.BOLD);
-                        p.sendMessage(text, true);
-                    }
+        List<SiegeOccupancy.Occupant> occupants = this.occupancy.occupants();
+        for (int i = 0; i < occupants.size(); i++) {
+            SiegeOccupancy.Occupant occupant = occupants.get(i);
+            SiegePlayer state = occupant.participant;
+            ServerPlayerEntity p = occupant.entity(world);
+            if (p != null && p.isSpectator()) {
+                int sec = 5 - (int) Math.floor((time - state.timeOfDeath) / 20.0f);
+
+                if (sec > 0 && (time - state.timeOfDeath) % 20 == 0) {
+                    Text text = Text.literal(String.format("Respawning in %ds", sec)).formatted(Formatting.BOLD);
+                    p.sendMessage(text, true);
+                }
 
-                    if (time - state.timeOfDeath > 5 * 20) {
-                        this.spawnParticipant(p, null);
-                    }
+                if (time - state.timeOfDeath > 5 * 20) {
+                    this.spawnParticipant(p, null);
                 }
-            });
+            }
         }
     }
 
@@ -635,24 +672,25 @@ public class SiegeActive {
     }
 
     private Optional<BestPlayer> getPlayerWithHighest(ToDoubleFunction<SiegePlayer> getter) {
-        return this.participants.entrySet()
+        return this.occupancy.occupants()
                 .stream()
-                .max(Comparator.comparingDouble(e -> getter.applyAsDouble(e.getValue())))
-                .map(e -> {
-                    ServerPlayerEntity p = e.getKey().getEntity(this.world);
+                .max(Comparator.comparingDouble(occupant -> getter.applyAsDouble(occupant.participant)))
+                .map(occupant -> {
+                    ServerPlayerEntity p = occupant.entity(this.world);
 
                     if (p == null) {
                         return null;
                     }
 
-                    return new BestPlayer(p.getEntityName(), getter.applyAsDouble(e.getValue()));
+                    return new BestPlayer(p.getEntityName(), getter.applyAsDouble(occupant.participant));
                 });
     }
 
     private void broadcastWin(GameTeam winningTeam) {
-        for (Map.Entry<PlayerRef, SiegePlayer> entry : this.participants.entrySet()) {
-            entry.getKey().ifOnline(this.gameSpace.getServer(), player -> {
-                if (entry.getValue().team == winningTeam && winningTeam == SiegeTeams.DEFENDERS) {
+        for (SiegeOccupancy.Occupant occupant : this.occupancy.occupants()) {
+            ServerPlayerEntity player = occupant.entity(this.world);
+            if (player != null) {
+                if (occupant.team() == winningTeam && winningTeam == SiegeTeams.DEFENDERS) {
                     player.playSound(SoundEvents.UI_TOAST_CHALLENGE_COMPLETE, SoundCategory.MASTER, 1.0F, 1.0F);
                     player.addStatusEffect(new StatusEffectInstance(StatusEffects.HERO_OF_THE_VILLAGE, 10, 0, false, false, true));
                 }
@@ -664,7 +702,7 @@ public class SiegeActive {
                 if (winningTeam == SiegeTeams.DEFENDERS) {
                     player.playSound(SoundEvents.ENTITY_VILLAGER_CELEBRATE, SoundCategory.MASTER, 1.0F, 1.0F);
                 }
-            });
+            }
         }
 
         Text message = Text.literal("The ")
@@ -701,12 +739,13 @@ public class SiegeActive {
         int attacker_deaths = 0;
         int defender_deaths = 0; // separate because other deaths exist
 
-        for (Map.Entry<PlayerRef, SiegePlayer> entry : this.participants.entrySet()) {
-            ServerPlayerEntity p = entry.getKey().getEntity(this.world);
+        for (SiegeOccupancy.Occupant occupant : this.occupancy.occupants()) {
+            ServerPlayerEntity p = occupant.entity(this.world);
+            SiegePlayer participant = occupant.participant;
 
             if (p != null) {
-                int kills = entry.getValue().kills;
-                int deaths = entry.getValue().deaths;
+                int kills = participant.kills;
+                int deaths = participant.deaths;
 
                 double kd = (double) kills / Math.max(1, deaths);
                 MutableText text = Text.literal("\nYour statistics:\n")
@@ -714,15 +753,15 @@ public class SiegeActive {
                         .append(String.format("Deaths - %d\n", deaths))
                         .append(String.format("K/D - %.2f\n", kd));
 
-                if (entry.getValue().team == SiegeTeams.DEFENDERS) {
-                    text.append(String.format("Secures - %d", entry.getValue().secures));
+                if (participant.team == SiegeTeams.DEFENDERS) {
+                    text.append(String.format("Secures - %d", participant.secures));
                 } else {
-                    text.append(String.format("Captures - %d", entry.getValue().captures));
+                    text.append(String.format("Captures - %d", participant.captures));
                 }
 
                 p.sendMessage(text.formatted(colour), false);
 
-                if (entry.getValue().team == SiegeTeams.DEFENDERS) {
+                if (participant.team == SiegeTeams.DEFENDERS) {
                     defender_kills += kills;
                     defender_deaths += deaths;
                 } else {
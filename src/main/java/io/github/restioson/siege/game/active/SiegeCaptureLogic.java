@@ -1,14 +1,10 @@
 package io.github.restioson.siege.game.active;
 
-import com.google.common.collect.ImmutableList;
 import io.github.restioson.siege.entity.SiegeKitStandEntity;
 import io.github.restioson.siege.game.SiegeSpawnLogic;
 import io.github.restioson.siege.game.SiegeTeams;
 import io.github.restioson.siege.game.map.SiegeFlag;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMaps;
-import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
-import net.minecraft.block.*;
+import io.github.restioson.siege.game.map.ZoneIndex;
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.LightningEntity;
 import net.minecraft.server.network.ServerPlayerEntity;
@@ -17,20 +13,13 @@ import net.minecraft.sound.SoundCategory;
 import net.minecraft.sound.SoundEvents;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.GameMode;
-import xyz.nucleoid.map_templates.BlockBounds;
 import xyz.nucleoid.plasmid.game.GameSpace;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
-import xyz.nucleoid.plasmid.util.PlayerRef;
-import xyz.nucleoid.plasmid.util.Scheduler;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public final class SiegeCaptureLogic {
     public static final int CAPTURE_TIME_TICKS = 20 * 40;
@@ -39,9 +28,7 @@ public final class SiegeCaptureLogic {
     private final GameSpace gameSpace;
     private final SiegeActive game;
 
-    private final List<ServerPlayerEntity> defendersPresent = new ArrayList<>();
-    private final List<ServerPlayerEntity> attackersPresent = new ArrayList<>();
-    private final Set<ServerPlayerEntity> playersPresent = new ReferenceOpenHashSet<>();
+    private final List<ServerPlayerEntity> capturingPlayers = new ArrayList<>();
 
     SiegeCaptureLogic(SiegeActive game) {
         this.world = game.world;
@@ -49,68 +36,34 @@ public final class SiegeCaptureLogic {
         this.game = game;
     }
 
-    void tick(ServerWorld world, int interval) {
-        for (SiegeFlag flag : this.game.map.flags) {
-            if (flag.capturable) {
-                this.tickCaptureFlag(world, flag, interval);
-            }
-        }
-    }
-
-    private void tickCaptureFlag(ServerWorld world, SiegeFlag flag, int interval) {
-        List<ServerPlayerEntity> defendersPresent = this.defendersPresent;
-        List<ServerPlayerEntity> attackersPresent = this.attackersPresent;
-        Set<ServerPlayerEntity> playersPresent = this.playersPresent;
-
-        defendersPresent.clear();
-        attackersPresent.clear();
-        playersPresent.clear();
-
-        for (Object2ObjectMap.Entry<PlayerRef, SiegePlayer> entry : Object2ObjectMaps.fastIterable(this.game.participants)) {
-            ServerPlayerEntity player = entry.getKey().getEntity(world);
-            if (player == null) {
-                continue;
-            }
-
-            if (player.interactionManager.getGameMode() != GameMode.SURVIVAL) {
-                continue;
-            }
-
-            SiegePlayer participant = entry.getValue();
+    void tick(SiegeTickScheduler scheduler, long time) {
+        SiegeOccupancy occupancy = this.game.occupancy;
+        ZoneIndex<SiegeFlag> flags = occupancy.flags();
 
-            if (flag.bounds.contains(player.getBlockPos())) {
-                GameTeam team = participant.team;
-                if (team == SiegeTeams.DEFENDERS) {
-                    defendersPresent.add(player);
-                } else if (team == SiegeTeams.ATTACKERS) {
-                    attackersPresent.add(player);
-                }
+        for (int id = 0; id < flags.size(); id++) {
+            if (scheduler.isFlagDue(time, id)) {
+                this.tickCaptureFlag(flags.get(id), occupancy.flagZone(id), scheduler.interval());
             }
         }
+    }
 
-        playersPresent.addAll(attackersPresent);
-        playersPresent.addAll(defendersPresent);
-
+    private void tickCaptureFlag(SiegeFlag flag, SiegeOccupancy.Zone zone, int interval) {
         boolean recapture = this.game.config.recapture();
-        boolean defendersAtFlag = !defendersPresent.isEmpty();
+        boolean defendersAtFlag = zone.activeCount(SiegeTeams.DEFENDERS) > 0;
         boolean defendersActuallyCapturing = defendersAtFlag && recapture;
-        boolean attackersCapturing = !attackersPresent.isEmpty();
+        boolean attackersCapturing = zone.activeCount(SiegeTeams.ATTACKERS) > 0;
         boolean contested = defendersAtFlag && attackersCapturing && !(flag.team == SiegeTeams.ATTACKERS && recapture);
         boolean capturing = defendersActuallyCapturing || attackersCapturing;
 
         CapturingState capturingState = null;
         GameTeam captureTeam = flag.team;
-        List<ServerPlayerEntity> capturingPlayers = ImmutableList.of();
+        List<ServerPlayerEntity> capturingPlayers = this.capturingPlayers;
+        capturingPlayers.clear();
 
         if (capturing) {
             if (!contested) {
-                if (defendersAtFlag) {
-                    captureTeam = SiegeTeams.DEFENDERS;
-                    capturingPlayers = defendersPresent;
-                } else {
-                    captureTeam = SiegeTeams.ATTACKERS;
-                    capturingPlayers = attackersPresent;
-                }
+                captureTeam = defendersAtFlag ? SiegeTeams.DEFENDERS : SiegeTeams.ATTACKERS;
+                this.collectPlayers(zone, captureTeam, capturingPlayers);
 
                 capturingState = captureTeam != flag.team ? CapturingState.CAPTURING : null;
             } else {
@@ -135,7 +88,31 @@ public final class SiegeCaptureLogic {
         }
 
         flag.updateCaptureBar();
-        flag.updateCapturingPlayers(playersPresent);
+        this.updateCaptureBarViewers(flag, zone);
+    }
+
+    private void collectPlayers(SiegeOccupancy.Zone zone, GameTeam team, List<ServerPlayerEntity> players) {
+        List<SiegeOccupancy.Occupant> occupants = zone.occupants();
+        for (int i = 0; i < occupants.size(); i++) {
+            SiegeOccupancy.Occupant occupant = occupants.get(i);
+            if (occupant.isActive() && occupant.team() == team) {
+                players.add(occupant.player);
+            }
+        }
+    }
+
+    private void updateCaptureBarViewers(SiegeFlag flag, SiegeOccupancy.Zone zone) {
+        flag.beginCaptureBarViewers();
+
+        List<SiegeOccupancy.Occupant> occupants = zone.occupants();
+        for (int i = 0; i < occupants.size(); i++) {
+            SiegeOccupancy.Occupant occupant = occupants.get(i);
+            if (occupant.isActive()) {
+                flag.addCaptureBarViewer(occupant.index, occupant.player);
+            }
+        }
+
+        flag.endCaptureBarViewers();
     }
 
     private void tickCapturing(SiegeFlag flag, int interval, GameTeam captureTeam, List<ServerPlayerEntity> capturingPlayers) {
@@ -144,6 +121,8 @@ public final class SiegeCaptureLogic {
             this.broadcastStartCapture(flag, captureTeam);
         }
 
+        int previousProgressTicks = flag.captureProgressTicks;
+
         if (flag.incrementCapture(captureTeam, interval * capturingPlayers.size())) {
             for (SiegeKitStandEntity kitStand : flag.kitStands) {
                 kitStand.onControllingFlagCaptured();
@@ -158,69 +137,13 @@ public final class SiegeCaptureLogic {
 
             this.broadcastCaptured(flag, captureTeam);
 
-            ServerWorld world = this.game.world;
-
-            for (BlockBounds blockBounds : flag.flagIndicatorBlocks) {
-                for (BlockPos blockPos : blockBounds) {
-                    BlockState blockState = world.getBlockState(blockPos);
-                    Block block = blockState.getBlock();
-                    if (block == Blocks.BLUE_WOOL || block == Blocks.RED_WOOL) {
-                        Block wool;
-
-                        if (captureTeam == SiegeTeams.DEFENDERS) {
-                            wool = Blocks.BLUE_WOOL;
-                        } else {
-                            wool = Blocks.RED_WOOL;
-                        }
-
-                        world.setBlockState(blockPos, wool.getDefaultState());
-                    }
-
-                    if (block == Blocks.BLUE_WALL_BANNER || block == Blocks.RED_WALL_BANNER) {
-                        Block banner;
-
-                        if (captureTeam == SiegeTeams.DEFENDERS) {
-                            banner = Blocks.BLUE_WALL_BANNER;
-                        } else {
-                            banner = Blocks.RED_WALL_BANNER;
-                        }
-
-                        BlockState newBlockState = banner.getDefaultState().with(WallBannerBlock.FACING, blockState.get(WallBannerBlock.FACING));
-                        world.setBlockState(blockPos, newBlockState);
-                    }
-
-                    if (block == Blocks.BLUE_BANNER || block == Blocks.RED_BANNER) {
-                        Block banner;
-
-                        if (captureTeam == SiegeTeams.DEFENDERS) {
-                            banner = Blocks.BLUE_BANNER;
-                        } else {
-                            banner = Blocks.RED_BANNER;
-                        }
-
-                        BlockState newBlockState = banner.getDefaultState().with(BannerBlock.ROTATION, blockState.get(BannerBlock.ROTATION));
-                        world.setBlockState(blockPos, newBlockState);
-                    }
-
-                    if (block == Blocks.BLUE_CONCRETE || block == Blocks.RED_CONCRETE) {
-                        Block concrete;
-
-                        if (captureTeam == SiegeTeams.DEFENDERS) {
-                            concrete = Blocks.BLUE_CONCRETE;
-                        } else {
-                            concrete = Blocks.RED_CONCRETE;
-                        }
-
-                        BlockState newBlockState = concrete.getDefaultState();
-                        world.setBlockState(blockPos, newBlockState);
-                    }
-                }
-            }
+            flag.indicator.apply(this.world, captureTeam);
 
             for (ServerPlayerEntity player : capturingPlayers) {
                 player.playSound(SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, SoundCategory.NEUTRAL, 1.0F, 1.0F);
             }
-        } else {
+        } else if (previousProgressTicks / SiegeTickScheduler.SECOND != flag.captureProgressTicks / SiegeTickScheduler.SECOND) {
+            // Only tick once per second of progress, however often the flag is updated
             for (ServerPlayerEntity player : capturingPlayers) {
                 player.playSound(SoundEvents.BLOCK_STONE_PLACE,  SoundCategory.NEUTRAL, 1.0F, 1.0F);
             }
@@ -254,24 +177,8 @@ public final class SiegeCaptureLogic {
 
         this.gameSpace.getPlayers().playSound(SoundEvents.BLOCK_BELL_USE);
 
-        for (Object2ObjectMap.Entry<PlayerRef, SiegePlayer> entry : Object2ObjectMaps.fastIterable(this.game.participants)) {
-            if (entry.getValue().team == captureTeam) {
-                continue;
-            }
-
-            entry.getKey().ifOnline(
-                    this.world,
-                    player -> {
-                        AtomicInteger plays = new AtomicInteger();
-                        Scheduler.INSTANCE.repeatWhile(
-                                s -> player.playSound(SoundEvents.BLOCK_BELL_USE, SoundCategory.PLAYERS, 1.0f, 1.0f),
-                                t -> plays.incrementAndGet() < 3,
-                                0,
-                                7
-                        );
-                    }
-            );
-        }
+        GameTeam opposingTeam = captureTeam == SiegeTeams.ATTACKERS ? SiegeTeams.DEFENDERS : SiegeTeams.ATTACKERS;
+        this.game.cues.play(flag, opposingTeam, SoundEvents.BLOCK_BELL_USE, 3, 7, this.world.getTime());
     }
 
     private void broadcastCaptured(SiegeFlag flag, GameTeam captureTeam) {
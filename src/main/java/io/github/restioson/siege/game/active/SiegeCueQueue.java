@@ -0,0 +1,82 @@
+package io.github.restioson.siege.game.active;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvent;
+import xyz.nucleoid.plasmid.game.common.team.GameTeam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Plays repeated sound cues to whole teams, ticked by the game. Cues are keyed by what triggered them (e.g. a flag),
+// so that a cue that is triggered again while still playing restarts rather than overlapping itself.
+final class SiegeCueQueue {
+    private final SiegeActive game;
+    private final List<Cue> cues = new ArrayList<>();
+
+    SiegeCueQueue(SiegeActive game) {
+        this.game = game;
+    }
+
+    void play(Object key, GameTeam team, SoundEvent sound, int count, int interval, long time) {
+        for (Cue cue : this.cues) {
+            if (cue.key == key && cue.sound == sound) {
+                cue.team = team;
+                cue.remaining = count;
+                cue.interval = interval;
+                cue.nextTime = Math.max(cue.nextTime, time);
+                return;
+            }
+        }
+
+        this.cues.add(new Cue(key, team, sound, count, interval, time));
+    }
+
+    void tick(long time) {
+        List<Cue> cues = this.cues;
+        for (int i = cues.size() - 1; i >= 0; i--) {
+            Cue cue = cues.get(i);
+            if (time < cue.nextTime) {
+                continue;
+            }
+
+            this.playToTeam(cue);
+
+            cue.nextTime = time + cue.interval;
+            if (--cue.remaining <= 0) {
+                // Order doesn't matter, so swap the last cue in rather than shifting
+                Cue last = cues.remove(cues.size() - 1);
+                if (last != cue) {
+                    cues.set(i, last);
+                }
+            }
+        }
+    }
+
+    private void playToTeam(Cue cue) {
+        for (SiegeOccupancy.Occupant occupant : this.game.occupancy.occupants()) {
+            ServerPlayerEntity player = occupant.player;
+            if (player != null && occupant.team() == cue.team) {
+                player.playSound(cue.sound, SoundCategory.PLAYERS, 1.0f, 1.0f);
+            }
+        }
+    }
+
+    private static final class Cue {
+        final Object key;
+        final SoundEvent sound;
+        GameTeam team;
+        int remaining;
+        int interval;
+        long nextTime;
+
+        Cue(Object key, GameTeam team, SoundEvent sound, int count, int interval, long time) {
+            this.key = key;
+            this.team = team;
+            this.sound = sound;
+            this.remaining = count;
+            this.interval = interval;
+            this.nextTime = time;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.restioson.siege.game.active;
+
+import io.github.restioson.siege.game.map.SiegeGate;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvents;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.List;
+
+// Slides portcullises towards open or closed every tick, at a configured number of rows per tick. All gates share a
+// soft budget of block writes per tick: a gate only moves while some of the budget is left, and once it is spent the
+// remaining gates keep their progress and move on a later tick. A move isn't split, so the last gate to move in a tick
+// may overshoot the budget by up to its own writes. The gate to start from rotates every tick so that no gate is
+// starved by the ones before it.
+final class SiegeGateAnimator {
+    // Don't play the sliding sound more often than this, however fast the gate moves
+    private static final int SOUND_INTERVAL = 10;
+
+    private final SiegeActive game;
+    private final float rowsPerTick;
+    private final int blockBudget;
+
+    private final long[] timeOfLastSound;
+    private int cursor;
+
+    SiegeGateAnimator(SiegeActive game, float rowsPerTick, int blockBudget) {
+        this.game = game;
+        this.rowsPerTick = rowsPerTick;
+        this.blockBudget = blockBudget;
+
+        this.timeOfLastSound = new long[game.map.gates.size()];
+    }
+
+    void tick(long time) {
+        List<SiegeGate> gates = this.game.map.gates;
+        int count = gates.size();
+        if (count == 0) {
+            return;
+        }
+
+        ServerWorld world = this.game.world;
+        int budget = this.blockBudget;
+
+        int start = this.cursor;
+        this.cursor = (start + 1) % count;
+
+        for (int i = 0; i < count; i++) {
+            int id = (start + i) % count;
+            SiegeGate gate = gates.get(id);
+            if (gate.bashedOpen) {
+                continue;
+            }
+
+            gate.opening = this.shouldOpen(gate);
+            if (!gate.isMoving()) {
+                gate.pendingRows = 0.0f;
+                continue;
+            }
+
+            // A gate waiting on the budget shouldn't jump by more than a tick's movement once it gets some
+            gate.pendingRows = Math.min(gate.pendingRows + this.rowsPerTick, Math.max(this.rowsPerTick, 1.0f));
+
+            int rows = (int) gate.pendingRows;
+            if (rows == 0 || budget <= 0) {
+                continue;
+            }
+
+            gate.pendingRows -= rows;
+            budget -= gate.slide(world, rows);
+
+            if (time - this.timeOfLastSound[id] >= SOUND_INTERVAL) {
+                this.timeOfLastSound[id] = time;
+
+                BlockPos pos = gate.portcullis.max();
+                world.playSound(null, pos.getX(), pos.getY(), pos.getZ(), SoundEvents.BLOCK_LADDER_STEP, SoundCategory.BLOCKS, 1.0f, world.random.nextFloat() * 0.25F + 0.6F);
+            }
+        }
+    }
+
+    private boolean shouldOpen(SiegeGate gate) {
+        SiegeOccupancy.Zone zone = this.game.occupancy.gateZone(gate);
+        int ownersPresent = zone.activeCount(gate.flag.team);
+        boolean ownerTeamPresent = ownersPresent > 0;
+        boolean enemyTeamPresent = zone.activeCount() > ownersPresent;
+
+        return ownerTeamPresent && !enemyTeamPresent;
+    }
+}
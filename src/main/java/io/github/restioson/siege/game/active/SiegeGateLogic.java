@@ -3,13 +3,14 @@ package io.github.restioson.siege.game.active;
 import io.github.restioson.siege.game.SiegeKit;
 import io.github.restioson.siege.game.SiegeTeams;
 import io.github.restioson.siege.game.map.SiegeGate;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.SharedConstants;
 import net.minecraft.block.Blocks;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemUsageContext;
 import net.minecraft.item.Items;
+import net.minecraft.particle.ParticleTypes;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.sound.SoundCategory;
@@ -19,87 +20,122 @@ import net.minecraft.util.ActionResult;
 import net.minecraft.util.Formatting;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.random.Random;
-import net.minecraft.world.GameMode;
-import net.minecraft.world.World;
+import org.jetbrains.annotations.Nullable;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
-import xyz.nucleoid.plasmid.util.PlayerRef;
+
+import java.util.List;
 
 public class SiegeGateLogic {
     private final SiegeActive game;
 
+    // Packed block positions of every portcullis and brace block, mapped to their gate
+    private final Long2ObjectMap<SiegeGate> portcullisGates = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<SiegeGate> braceGates = new Long2ObjectOpenHashMap<>();
+
     public SiegeGateLogic(SiegeActive game) {
         this.game = game;
+
+        for (SiegeGate gate : game.map.gates) {
+            for (BlockPos pos : gate.portcullis) {
+                this.portcullisGates.putIfAbsent(pos.asLong(), gate);
+            }
+
+            if (gate.brace != null) {
+                for (BlockPos pos : gate.brace) {
+                    this.braceGates.putIfAbsent(pos.asLong(), gate);
+                }
+            }
+        }
     }
 
-    public void tick() {
-        for (SiegeGate gate : this.game.map.gates) {
-            this.tickGate(gate);
+    void tick(SiegeTickScheduler scheduler, long time) {
+        List<SiegeGate> gates = this.game.map.gates;
+        for (int id = 0; id < gates.size(); id++) {
+            if (scheduler.isGateDue(time, id)) {
+                this.tickGate(gates.get(id));
+            }
         }
     }
 
     public ActionResult maybeBraceGate(BlockPos pos, ServerPlayerEntity player, ItemUsageContext ctx) {
-        for (SiegeGate gate : this.game.map.gates) {
-            if (gate.brace != null && gate.brace.contains(pos)) {
-                if (gate.health < gate.maxHealth) {
-                    ServerWorld world = this.game.world;
-                    gate.health += 1;
-                    gate.broadcastHealth(player, this.game, world);
-                    world.setBlockState(pos, Blocks.AIR.getDefaultState());
-                    ctx.getStack().decrement(1);
-                    return ActionResult.FAIL;
-                } else {
-                    player.sendMessage(Text.literal("The gate is already at max health!").formatted(Formatting.DARK_GREEN), true);
-                }
-                return ActionResult.FAIL;
-            }
+        SiegeGate gate = this.braceGates.get(pos.asLong());
+        if (gate == null) {
+            return ActionResult.PASS;
         }
 
-        return ActionResult.PASS;
+        if (gate.health < gate.maxHealth) {
+            ServerWorld world = this.game.world;
+            gate.health += 1;
+            gate.broadcastHealth(player, this.game);
+            world.setBlockState(pos, Blocks.AIR.getDefaultState());
+            ctx.getStack().decrement(1);
+            return ActionResult.FAIL;
+        } else {
+            player.sendMessage(Text.literal("The gate is already at max health!").formatted(Formatting.DARK_GREEN), true);
+        }
+        return ActionResult.FAIL;
+    }
+
+    // Returns the gate whose portcullis is at this position, if it can still be damaged
+    @Nullable
+    public SiegeGate damageableGateAt(BlockPos pos) {
+        SiegeGate gate = this.portcullisGates.get(pos.asLong());
+        if (gate != null && !gate.bashedOpen && gate.health > 0) {
+            return gate;
+        }
+        return null;
     }
 
     public ActionResult maybeBash(BlockPos pos, ServerPlayerEntity player, SiegePlayer participant, long time) {
+        SiegeGate gate = this.damageableGateAt(pos);
+        if (gate == null) {
+            return ActionResult.PASS;
+        }
+
         Item mainHandItem = player.getInventory().getMainHandStack().getItem();
         boolean holdingBashWeapon = mainHandItem == Items.IRON_SWORD || mainHandItem == Items.STONE_AXE;
         boolean rightKit = participant.kit == SiegeKit.SHIELD_BEARER || participant.kit == SiegeKit.SOLDIER;
 
-        for (SiegeGate gate : this.game.map.gates) {
-            if (!gate.bashedOpen && gate.health > 0 && gate.portcullis.contains(pos)) {
-                if (participant.team == gate.flag.team) {
-                    player.sendMessage(Text.literal("You cannot bash your own gate!").formatted(Formatting.RED), true);
-                    return ActionResult.FAIL;
-                } else if (!rightKit) {
-                    player.sendMessage(Text.literal("Only soldiers and shieldbearers can bash!").formatted(Formatting.RED), true);
-                    return ActionResult.FAIL;
-                } else if (!holdingBashWeapon) {
-                    player.sendMessage(Text.literal("You can only bash with a sword or axe!").formatted(Formatting.RED), true);
-                    return ActionResult.FAIL;
-                } else if (!player.isSprinting()) {
-                    player.sendMessage(Text.literal("You must be sprinting to bash!").formatted(Formatting.RED), true);
-                    return ActionResult.FAIL;
-                } else if (player.getItemCooldownManager().isCoolingDown(mainHandItem)) {
-                    return ActionResult.FAIL;
-                }
+        if (participant.team == gate.flag.team) {
+            player.sendMessage(Text.literal("You cannot bash your own gate!").formatted(Formatting.RED), true);
+            return ActionResult.FAIL;
+        } else if (!rightKit) {
+            player.sendMessage(Text.literal("Only soldiers and shieldbearers can bash!").formatted(Formatting.RED), true);
+            return ActionResult.FAIL;
+        } else if (!holdingBashWeapon) {
+            player.sendMessage(Text.literal("You can only bash with a sword or axe!").formatted(Formatting.RED), true);
+            return ActionResult.FAIL;
+        } else if (!player.isSprinting()) {
+            player.sendMessage(Text.literal("You must be sprinting to bash!").formatted(Formatting.RED), true);
+            return ActionResult.FAIL;
+        } else if (player.getItemCooldownManager().isCoolingDown(mainHandItem)) {
+            return ActionResult.FAIL;
+        }
 
-                player.getItemCooldownManager().set(Items.IRON_SWORD, SharedConstants.TICKS_PER_SECOND);
-                player.getItemCooldownManager().set(Items.STONE_AXE, SharedConstants.TICKS_PER_SECOND);
-                ServerWorld world = this.game.world;
-                world.createExplosion(null, pos.getX(), pos.getY(), pos.getZ(), 0.0f, World.ExplosionSourceType.NONE);
-                gate.health -= 1;
-                gate.timeOfLastBash = time;
-                gate.broadcastHealth(player, this.game, world);
+        player.getItemCooldownManager().set(Items.IRON_SWORD, SharedConstants.TICKS_PER_SECOND);
+        player.getItemCooldownManager().set(Items.STONE_AXE, SharedConstants.TICKS_PER_SECOND);
+        ServerWorld world = this.game.world;
+        playExplosionEffect(world, pos.getX(), pos.getY(), pos.getZ());
+        gate.health -= 1;
+        gate.timeOfLastBash = time;
+        gate.broadcastHealth(player, this.game);
 
-                return ActionResult.FAIL;
-            }
-        }
+        return ActionResult.FAIL;
+    }
 
-        return ActionResult.PASS;
+    // Looks and sounds like an explosion with no power, without computing one or firing explosion events
+    private static void playExplosionEffect(ServerWorld world, double x, double y, double z) {
+        world.spawnParticles(ParticleTypes.EXPLOSION, x, y, z, 1, 0.0, 0.0, 0.0, 0.0);
+
+        float pitch = (1.0F + (world.random.nextFloat() - world.random.nextFloat()) * 0.2F) * 0.7F;
+        world.playSound(null, x, y, z, SoundEvents.ENTITY_GENERIC_EXPLODE, SoundCategory.BLOCKS, 4.0F, pitch);
     }
 
     public void tickGate(SiegeGate gate) {
         ServerWorld world = this.game.world;
 
         if (gate.health <= 0 && !gate.bashedOpen) {
-            gate.slider.setOpen(world);
+            gate.bashOpen(world);
 
             BlockPos min = gate.portcullis.min();
             BlockPos max = gate.portcullis.max();
@@ -110,7 +146,7 @@ public class SiegeGateLogic {
                 double y = min.getY() + rand.nextInt(max.getY() - min.getY() + 1);
                 double z = min.getZ() + rand.nextInt(max.getZ() - min.getZ() + 1);
 
-                world.createExplosion(null, x, y, z, 0.0f, World.ExplosionSourceType.NONE);
+                playExplosionEffect(world, x, y, z);
             }
 
             GameTeam bashTeam = gate.flag.team == SiegeTeams.ATTACKERS ? SiegeTeams.DEFENDERS : SiegeTeams.ATTACKERS;
@@ -125,8 +161,6 @@ public class SiegeGateLogic {
                             .append("!")
                             .formatted(Formatting.BOLD)
             );
-
-            gate.bashedOpen = true;
         } else if (gate.health >= gate.repairedHealthThreshold && gate.bashedOpen) {
             GameTeam team = gate.flag.team;
             this.game.gameSpace.getPlayers().sendMessage(
@@ -143,45 +177,7 @@ public class SiegeGateLogic {
             BlockPos max = gate.portcullis.max();
             world.playSound(null, max.getX(), max.getY(), max.getZ(), SoundEvents.BLOCK_ANVIL_USE, SoundCategory.BLOCKS, 1.0f, world.random.nextFloat() * 0.25F + 0.6F);
 
-            gate.slider.setClosed(world);
-            gate.bashedOpen = false;
+            gate.repair(world);
         }
-
-        if (gate.bashedOpen) {
-            return;
-        }
-
-        boolean ownerTeamPresent = false;
-        boolean enemyTeamPresent = false;
-
-        for (Object2ObjectMap.Entry<PlayerRef, SiegePlayer> entry : Object2ObjectMaps.fastIterable(this.game.participants)) {
-            ServerPlayerEntity player = entry.getKey().getEntity(world);
-            if (player == null || player.interactionManager.getGameMode() != GameMode.SURVIVAL) {
-                continue;
-            }
-
-            if (gate.gateOpen.contains(player.getBlockPos())) {
-                SiegePlayer participant = entry.getValue();
-                if (participant.team == gate.flag.team) {
-                    ownerTeamPresent = true;
-                } else {
-                    enemyTeamPresent = true;
-                }
-            }
-        }
-
-        boolean shouldOpen = ownerTeamPresent && !enemyTeamPresent;
-
-        boolean moved = shouldOpen ? gate.tickOpen(world) : gate.tickClose(world);
-        if (!moved) {
-            return;
-        }
-
-        BlockPos pos = gate.portcullis.max();
-        double x = pos.getX();
-        double y = pos.getY();
-        double z = pos.getZ();
-
-        world.playSound(null, x, y, z, SoundEvents.BLOCK_LADDER_STEP, SoundCategory.BLOCKS, 1.0f, world.random.nextFloat() * 0.25F + 0.6F);
     }
 }
@@ -0,0 +1,323 @@
+package io.github.restioson.siege.game.active;
+
+import io.github.restioson.siege.game.SiegeTeams;
+import io.github.restioson.siege.game.map.SiegeFlag;
+import io.github.restioson.siege.game.map.SiegeGate;
+import io.github.restioson.siege.game.map.SiegeMap;
+import io.github.restioson.siege.game.map.ZoneIndex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.GameMode;
+import org.jetbrains.annotations.Nullable;
+import xyz.nucleoid.map_templates.BlockBounds;
+import xyz.nucleoid.plasmid.game.common.team.GameTeam;
+import xyz.nucleoid.plasmid.util.PlayerRef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// The registry of participants, and which flag and gate zones each of them is standing in. Every participant gets a
+// dense index and caches their resolved player entity, which is only looked up again once that entity is removed.
+// Zone membership is only recomputed for a player when their block position or game mode changes, or when they join
+// or leave, so that the capture and gate logic can read ready-made occupant counts without scanning every participant.
+public final class SiegeOccupancy {
+    private final ZoneIndex<SiegeFlag> flags;
+    private final ZoneIndex<SiegeGate> gates;
+    private final ZoneIndex<BlockBounds> noBuildRegions;
+
+    private final Object2ObjectMap<UUID, Occupant> byId = new Object2ObjectOpenHashMap<>();
+    // Every occupant, packed together for iteration
+    private final List<Occupant> occupants = new ArrayList<>();
+    private final IntArrayList freeIndices = new IntArrayList();
+    private int nextIndex;
+    private final Zone[] flagZones;
+    private final Zone[] gateZones;
+    private final Reference2IntMap<SiegeGate> gateIds = new Reference2IntOpenHashMap<>();
+
+    SiegeOccupancy(SiegeMap map) {
+        List<SiegeFlag> capturableFlags = map.flags.stream()
+                .filter(flag -> flag.capturable)
+                .toList();
+
+        this.flags = ZoneIndex.build(capturableFlags, flag -> flag.bounds);
+        this.gates = ZoneIndex.build(map.gates, gate -> gate.gateOpen);
+        this.noBuildRegions = ZoneIndex.build(map.noBuildRegions, bounds -> bounds);
+
+        this.flagZones = new Zone[this.flags.size()];
+        for (int id = 0; id < this.flagZones.length; id++) {
+            this.flagZones[id] = new Zone(true, id);
+        }
+
+        this.gateZones = new Zone[this.gates.size()];
+        for (int id = 0; id < this.gateZones.length; id++) {
+            this.gateZones[id] = new Zone(false, id);
+            this.gateIds.put(this.gates.get(id), id);
+        }
+    }
+
+    Occupant add(ServerPlayerEntity player, SiegePlayer participant) {
+        int index = this.freeIndices.isEmpty() ? this.nextIndex++ : this.freeIndices.popInt();
+
+        Occupant occupant = new Occupant(PlayerRef.of(player), participant, index);
+        occupant.entity = player;
+        occupant.slot = this.occupants.size();
+
+        this.byId.put(player.getUuid(), occupant);
+        this.occupants.add(occupant);
+
+        return occupant;
+    }
+
+    void remove(Occupant occupant) {
+        if (this.byId.remove(occupant.ref.id()) == null) {
+            return;
+        }
+
+        this.leaveZones(occupant);
+        this.freeIndices.push(occupant.index);
+
+        // Order doesn't matter, so swap the last occupant in rather than shifting
+        Occupant last = this.occupants.remove(this.occupants.size() - 1);
+        if (last != occupant) {
+            this.occupants.set(occupant.slot, last);
+            last.slot = occupant.slot;
+        }
+
+        occupant.entity = null;
+        occupant.player = null;
+    }
+
+    // Still visits every occupant each tick, but only to compare their position and game mode with the last update
+    void update(ServerWorld world) {
+        List<Occupant> occupants = this.occupants;
+        for (int i = 0; i < occupants.size(); i++) {
+            Occupant occupant = occupants.get(i);
+            ServerPlayerEntity player = occupant.entity(world);
+            if (player == null) {
+                if (occupant.player != null) {
+                    this.leaveZones(occupant);
+                    occupant.player = null;
+                }
+                continue;
+            }
+
+            BlockPos pos = player.getBlockPos();
+            GameMode gameMode = player.interactionManager.getGameMode();
+            if (player == occupant.player && gameMode == occupant.gameMode && pos.equals(occupant.pos)) {
+                continue;
+            }
+
+            this.leaveZones(occupant);
+
+            occupant.player = player;
+            occupant.pos = pos;
+            occupant.gameMode = gameMode;
+
+            this.enterZones(occupant);
+        }
+    }
+
+    private void enterZones(Occupant occupant) {
+        BlockPos pos = occupant.pos;
+        boolean active = occupant.gameMode == GameMode.SURVIVAL;
+        occupant.countedActive = active;
+
+        for (int id : this.flags.candidatesAt(pos)) {
+            if (this.flags.contains(id, pos)) {
+                occupant.flags.add(id);
+                occupant.flagSlots.add(this.flagZones[id].add(occupant, active));
+            }
+        }
+
+        for (int id : this.gates.candidatesAt(pos)) {
+            if (this.gates.contains(id, pos)) {
+                occupant.gates.add(id);
+                occupant.gateSlots.add(this.gateZones[id].add(occupant, active));
+            }
+        }
+
+        occupant.inNoBuildRegion = this.noBuildRegions.findAt(pos) != -1;
+    }
+
+    private void leaveZones(Occupant occupant) {
+        boolean active = occupant.countedActive;
+
+        for (int i = 0; i < occupant.flags.size(); i++) {
+            this.flagZones[occupant.flags.getInt(i)].remove(occupant.flagSlots.getInt(i), active);
+        }
+
+        for (int i = 0; i < occupant.gates.size(); i++) {
+            this.gateZones[occupant.gates.getInt(i)].remove(occupant.gateSlots.getInt(i), active);
+        }
+
+        occupant.flags.clear();
+        occupant.flagSlots.clear();
+        occupant.gates.clear();
+        occupant.gateSlots.clear();
+        occupant.inNoBuildRegion = false;
+        occupant.countedActive = false;
+    }
+
+    // Every participant, in no particular order. Removing a participant moves the last one into its place.
+    public List<Occupant> occupants() {
+        return this.occupants;
+    }
+
+    @Nullable
+    public Occupant get(ServerPlayerEntity player) {
+        return this.byId.get(player.getUuid());
+    }
+
+    @Nullable
+    public Occupant get(PlayerRef ref) {
+        return this.byId.get(ref.id());
+    }
+
+    // The capturable flags, indexed by flag id
+    public ZoneIndex<SiegeFlag> flags() {
+        return this.flags;
+    }
+
+    public Zone flagZone(int id) {
+        return this.flagZones[id];
+    }
+
+    public Zone gateZone(SiegeGate gate) {
+        return this.gateZones[this.gateIds.getInt(gate)];
+    }
+
+    public boolean isNoBuildRegion(BlockPos pos) {
+        return this.noBuildRegions.findAt(pos) != -1;
+    }
+
+    public static final class Zone {
+        private final boolean flag;
+        private final int id;
+
+        private final List<Occupant> occupants = new ArrayList<>();
+        private int activeAttackers;
+        private int activeDefenders;
+
+        Zone(boolean flag, int id) {
+            this.flag = flag;
+            this.id = id;
+        }
+
+        // Returns the occupant's slot in this zone, which is kept by the occupant so that it can be removed directly
+        int add(Occupant occupant, boolean active) {
+            this.occupants.add(occupant);
+            if (active) {
+                this.count(occupant.team(), 1);
+            }
+            return this.occupants.size() - 1;
+        }
+
+        void remove(int slot, boolean active) {
+            Occupant occupant = this.occupants.get(slot);
+
+            // Order doesn't matter, so swap the last occupant in rather than shifting
+            Occupant last = this.occupants.remove(this.occupants.size() - 1);
+            if (last != occupant) {
+                this.occupants.set(slot, last);
+                last.setZoneSlot(this.flag, this.id, slot);
+            }
+
+            if (active) {
+                this.count(occupant.team(), -1);
+            }
+        }
+
+        private void count(GameTeam team, int amount) {
+            if (team == SiegeTeams.ATTACKERS) {
+                this.activeAttackers += amount;
+            } else if (team == SiegeTeams.DEFENDERS) {
+                this.activeDefenders += amount;
+            }
+        }
+
+        // Every online participant in this zone, whatever their game mode
+        public List<Occupant> occupants() {
+            return this.occupants;
+        }
+
+        // The number of alive players of the given team in this zone
+        public int activeCount(GameTeam team) {
+            if (team == SiegeTeams.ATTACKERS) {
+                return this.activeAttackers;
+            } else if (team == SiegeTeams.DEFENDERS) {
+                return this.activeDefenders;
+            }
+            return 0;
+        }
+
+        public int activeCount() {
+            return this.activeAttackers + this.activeDefenders;
+        }
+    }
+
+    public static final class Occupant {
+        public final PlayerRef ref;
+        public final SiegePlayer participant;
+        // A dense index, stable for as long as this player is a participant. Indices are reused after players leave.
+        public final int index;
+
+        // The player, if they were in the game world as of the last update
+        @Nullable
+        public ServerPlayerEntity player;
+        public GameMode gameMode;
+        public BlockPos pos;
+        public boolean inNoBuildRegion;
+
+        // The ids of the flags and gates this player is standing in, and their slot in each of those zones
+        final IntArrayList flags = new IntArrayList();
+        final IntArrayList flagSlots = new IntArrayList();
+        final IntArrayList gates = new IntArrayList();
+        final IntArrayList gateSlots = new IntArrayList();
+
+        // Whether this player was counted as active by the zones they entered
+        boolean countedActive;
+
+        // The last resolved player entity, and this occupant's position in the packed list
+        @Nullable
+        private ServerPlayerEntity entity;
+        int slot;
+
+        Occupant(PlayerRef ref, SiegePlayer participant, int index) {
+            this.ref = ref;
+            this.participant = participant;
+            this.index = index;
+        }
+
+        // The player if they are in the given world. The entity is only looked up again once the cached one is removed.
+        @Nullable
+        public ServerPlayerEntity entity(ServerWorld world) {
+            ServerPlayerEntity entity = this.entity;
+            if (entity == null || entity.isRemoved()) {
+                this.entity = entity = world.getServer().getPlayerManager().getPlayer(this.ref.id());
+            }
+            return entity != null && entity.getWorld() == world ? entity : null;
+        }
+
+        void setZoneSlot(boolean flag, int id, int slot) {
+            IntArrayList ids = flag ? this.flags : this.gates;
+            IntArrayList slots = flag ? this.flagSlots : this.gateSlots;
+            slots.set(ids.indexOf(id), slot);
+        }
+
+        public GameTeam team() {
+            return this.participant.team;
+        }
+
+        // Whether this player is online and alive, and so can capture flags and hold gates open
+        public boolean isActive() {
+            return this.player != null && this.gameMode == GameMode.SURVIVAL;
+        }
+    }
+}
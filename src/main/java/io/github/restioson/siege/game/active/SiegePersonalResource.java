@@ -1,12 +1,23 @@
 package io.github.restioson.siege.game.active;
 
 public enum SiegePersonalResource {
-    WOOD(64),
-    TNT(2);
+    WOOD(64, 2 * SiegeTickScheduler.SECOND),
+    TNT(2, 60 * SiegeTickScheduler.SECOND);
+
+    static final SiegePersonalResource[] VALUES = values();
 
     public final int max;
+    // One of this resource is regenerated every this many ticks
+    public final int regenerationInterval;
 
-    SiegePersonalResource(int max) {
+    SiegePersonalResource(int max, int regenerationInterval) {
         this.max = max;
+        this.regenerationInterval = regenerationInterval;
+    }
+
+    // The number of times this resource regenerates after the tick `from`, up to and including the tick `to`
+    long regenerationsBetween(long from, long to) {
+        long phase = SiegeTickScheduler.RESOURCE_PHASE;
+        return Math.floorDiv(to - phase, this.regenerationInterval) - Math.floorDiv(from - phase, this.regenerationInterval);
     }
 }
@@ -1,23 +1,22 @@
 package io.github.restioson.siege.game.active;
 
 import io.github.restioson.siege.game.SiegeKit;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
 import org.jetbrains.annotations.Nullable;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
 
 public class SiegePlayer {
     public GameTeam team;
     public SiegeKit kit;
-    @Nullable
-    public AttackRecord lastTimeWasAttacked;
+    public final AttackRecord lastTimeWasAttacked = new AttackRecord();
     public long timeOfDeath;
     public long timeOfSpawn;
 
     // If they have attacked this life, then their respawn invulnerability is removed
     public boolean attackedThisLife;
-    private final Object2IntOpenHashMap<SiegePersonalResource> resources = new Object2IntOpenHashMap<>();
+
+    // Indexed by resource ordinal. Regeneration is only added when a resource is next used.
+    private final int[] resources = new int[SiegePersonalResource.VALUES.length];
+    private long resourcesUpdatedAt;
 
     // Statistics
     public int deaths;
@@ -28,34 +27,46 @@ public class SiegePlayer {
     public SiegePlayer(GameTeam team) {
         this.team = team;
         this.kit = SiegeKit.SOLDIER;
-        this.resources.put(SiegePersonalResource.WOOD, SiegePersonalResource.WOOD.max);
-        this.resources.put(SiegePersonalResource.TNT, SiegePersonalResource.TNT.max);
-        this.resources.defaultReturnValue(0);
+        for (SiegePersonalResource resource : SiegePersonalResource.VALUES) {
+            this.resources[resource.ordinal()] = resource.max;
+        }
     }
 
-    public ServerPlayerEntity attacker(long time, ServerWorld world) {
-        if (this.lastTimeWasAttacked != null) {
-            return this.lastTimeWasAttacked.isValid(time) ? this.lastTimeWasAttacked.player.getEntity(world) : null;
-        } else {
-            return null;
-        }
+    @Nullable
+    public SiegeOccupancy.Occupant attacker(long time) {
+        return this.lastTimeWasAttacked.get(time);
     }
 
-    public void incrementResource(SiegePersonalResource resource, int amount) {
-        int newAmount = this.resources.addTo(resource, amount);
-        if (newAmount > resource.max) {
-            this.resources.replace(resource, resource.max);
+    // Adds whatever has regenerated since the resources were last used
+    private void regenerateResources(long time) {
+        long updatedAt = this.resourcesUpdatedAt;
+        if (time <= updatedAt) {
+            return;
         }
+
+        for (SiegePersonalResource resource : SiegePersonalResource.VALUES) {
+            long regenerated = resource.regenerationsBetween(updatedAt, time);
+            if (regenerated > 0) {
+                int index = resource.ordinal();
+                this.resources[index] = (int) Math.min(resource.max, this.resources[index] + regenerated);
+            }
+        }
+
+        this.resourcesUpdatedAt = time;
+    }
+
+    public void incrementResource(SiegePersonalResource resource, int amount, long time) {
+        this.regenerateResources(time);
+        int index = resource.ordinal();
+        this.resources[index] = Math.min(this.resources[index] + amount, resource.max);
     }
 
     // Try decrement an amount, returning how much was actually decremented
-    public int tryDecrementResource(SiegePersonalResource resource, int amount) {
-        int newAmount = this.resources.addTo(resource, -amount) - amount; // addTo returns previous value
-        if (newAmount < 0) {
-            this.resources.replace(resource, 0);
-            return amount + newAmount;
-        } else {
-            return amount;
-        }
+    public int tryDecrementResource(SiegePersonalResource resource, int amount, long time) {
+        this.regenerateResources(time);
+        int index = resource.ordinal();
+        int decremented = Math.min(amount, this.resources[index]);
+        this.resources[index] -= decremented;
+        return decremented;
     }
 }
@@ -2,7 +2,6 @@ package io.github.restioson.siege.game.active;
 
 import io.github.restioson.siege.game.SiegeConfig;
 import io.github.restioson.siege.game.SiegeTeams;
-import io.github.restioson.siege.game.map.SiegeFlag;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.world.GameMode;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
@@ -76,12 +75,7 @@ public class SiegeStageManager {
     }
 
     private boolean testAttackersWin() {
-        for (SiegeFlag flag : this.game.map.flags) {
-            if (flag.team != SiegeTeams.ATTACKERS) {
-                return false;
-            }
-        }
-        return true;
+        return this.game.map.flagGraph.allHeldBy(SiegeTeams.ATTACKERS);
     }
 
     private GameTeam getRemainingTeam() {
@@ -0,0 +1,42 @@
+package io.github.restioson.siege.game.active;
+
+// Spreads the periodic game logic across ticks, so that capturing, gates, the sidebar and warps don't all run on the
+// same tick once every second
+final class SiegeTickScheduler {
+    static final int SECOND = 20;
+
+    // Phases within each second for logic that runs once per second regardless of the configured interval
+    static final int SIDEBAR_PHASE = 0;
+    static final int WARP_PHASE = 10;
+    static final int RESOURCE_PHASE = 5;
+
+    private final int interval;
+
+    SiegeTickScheduler(int interval) {
+        this.interval = interval;
+    }
+
+    // The number of ticks between two runs of the same flag or gate
+    int interval() {
+        return this.interval;
+    }
+
+    // Whether the flag with the given id should be ticked this tick. Flags are round-robined across the interval, so
+    // that each tick only handles a share of them
+    boolean isFlagDue(long time, int id) {
+        return this.isDue(time, id, 0);
+    }
+
+    // As with flags, but offset by half an interval so that gates and flags don't tend to share ticks
+    boolean isGateDue(long time, int id) {
+        return this.isDue(time, id, this.interval / 2);
+    }
+
+    private boolean isDue(long time, int id, int phase) {
+        return Math.floorMod(time - phase - id, this.interval) == 0;
+    }
+
+    static boolean isPhase(long time, int period, int phase) {
+        return time % period == phase;
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.restioson.siege.game.map;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+// A set of block positions, stored as one 4096-bit set per chunk section. Sections with no positions aren't stored,
+// and sections with every position share a single full set, so a lookup is a map get and a bit test either way.
+public final class BlockBitSet {
+    public static final int WORDS = 16 * 16 * 16 / Long.SIZE;
+
+    private static final long[] FULL = new long[WORDS];
+
+    static {
+        Arrays.fill(FULL, -1L);
+    }
+
+    private final Long2ObjectOpenHashMap<long[]> sections = new Long2ObjectOpenHashMap<>();
+
+    // Adds a whole section's bits, as built by a scan of that section. The set takes ownership of the array.
+    public void addSection(long key, long[] words) {
+        long[] existing = this.sections.get(key);
+        if (existing == null) {
+            this.sections.put(key, words);
+        } else if (existing != FULL) {
+            for (int i = 0; i < WORDS; i++) {
+                existing[i] |= words[i];
+            }
+        }
+    }
+
+    public void addFullSection(long key) {
+        this.sections.put(key, FULL);
+    }
+
+    public int sectionCount() {
+        return this.sections.size();
+    }
+
+    // Visits every stored section, passing null as the bits of full sections
+    public void forEachSection(SectionConsumer consumer) {
+        for (Long2ObjectMap.Entry<long[]> entry : this.sections.long2ObjectEntrySet()) {
+            long[] words = entry.getValue();
+            consumer.accept(entry.getLongKey(), words != FULL ? words : null);
+        }
+    }
+
+    public boolean contains(BlockPos pos) {
+        return this.contains(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public boolean contains(long pos) {
+        return this.contains(BlockPos.unpackLongX(pos), BlockPos.unpackLongY(pos), BlockPos.unpackLongZ(pos));
+    }
+
+    public boolean contains(int x, int y, int z) {
+        long[] words = this.sections.get(ChunkSectionPos.asLong(x >> 4, y >> 4, z >> 4));
+        if (words == null) {
+            return false;
+        }
+
+        int index = index(x, y, z);
+        return (words[index >> 6] & 1L << index) != 0;
+    }
+
+    // Drops empty sections and shares the storage of full ones. Should be called once the set is built.
+    public void compact() {
+        ObjectIterator<Long2ObjectMap.Entry<long[]>> iterator = this.sections.long2ObjectEntrySet().iterator();
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<long[]> entry = iterator.next();
+            long[] words = entry.getValue();
+            if (words == FULL) {
+                continue;
+            }
+
+            boolean empty = true;
+            boolean full = true;
+            for (long word : words) {
+                empty &= word == 0L;
+                full &= word == -1L;
+            }
+
+            if (empty) {
+                iterator.remove();
+            } else if (full) {
+                entry.setValue(FULL);
+            }
+        }
+
+        this.sections.trim();
+    }
+
+    public static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+    }
+
+    public static long[] newSection() {
+        return new long[WORDS];
+    }
+
+    public interface SectionConsumer {
+        void accept(long key, @Nullable long[] words);
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.restioson.siege.game.map;
+
+import io.github.restioson.siege.game.SiegeTeams;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.block.BannerBlock;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.WallBannerBlock;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import org.jetbrains.annotations.Nullable;
+import xyz.nucleoid.map_templates.BlockBounds;
+import xyz.nucleoid.map_templates.MapTemplate;
+import xyz.nucleoid.plasmid.game.common.team.GameTeam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The wool, concrete and banners showing which team holds a flag. These are classified from the template once when
+// the map is loaded, along with the state they take for each team, so recolouring them doesn't read the world.
+public final class FlagIndicator {
+    public static final FlagIndicator EMPTY = new FlagIndicator(new long[0], new BlockState[0], new BlockState[0]);
+
+    private final long[] positions;
+    private final BlockState[] defenderStates;
+    private final BlockState[] attackerStates;
+
+    private FlagIndicator(long[] positions, BlockState[] defenderStates, BlockState[] attackerStates) {
+        this.positions = positions;
+        this.defenderStates = defenderStates;
+        this.attackerStates = attackerStates;
+    }
+
+    public static FlagIndicator build(MapTemplate template, List<BlockBounds> regions) {
+        LongArrayList positions = new LongArrayList();
+        List<BlockState> defenderStates = new ArrayList<>();
+        List<BlockState> attackerStates = new ArrayList<>();
+
+        for (BlockBounds bounds : regions) {
+            for (BlockPos pos : bounds) {
+                BlockState state = template.getBlockState(pos);
+
+                BlockState defenderState = recolor(state, SiegeTeams.DEFENDERS);
+                if (defenderState != null) {
+                    positions.add(pos.asLong());
+                    defenderStates.add(defenderState);
+                    attackerStates.add(recolor(state, SiegeTeams.ATTACKERS));
+                }
+            }
+        }
+
+        return new FlagIndicator(
+                positions.toLongArray(),
+                defenderStates.toArray(new BlockState[0]),
+                attackerStates.toArray(new BlockState[0])
+        );
+    }
+
+    @Nullable
+    private static BlockState recolor(BlockState state, GameTeam team) {
+        boolean defenders = team == SiegeTeams.DEFENDERS;
+        Block block = state.getBlock();
+
+        if (block == Blocks.BLUE_WOOL || block == Blocks.RED_WOOL) {
+            return (defenders ? Blocks.BLUE_WOOL : Blocks.RED_WOOL).getDefaultState();
+        }
+
+        if (block == Blocks.BLUE_WALL_BANNER || block == Blocks.RED_WALL_BANNER) {
+            Block banner = defenders ? Blocks.BLUE_WALL_BANNER : Blocks.RED_WALL_BANNER;
+            return banner.getDefaultState().with(WallBannerBlock.FACING, state.get(WallBannerBlock.FACING));
+        }
+
+        if (block == Blocks.BLUE_BANNER || block == Blocks.RED_BANNER) {
+            Block banner = defenders ? Blocks.BLUE_BANNER : Blocks.RED_BANNER;
+            return banner.getDefaultState().with(BannerBlock.ROTATION, state.get(BannerBlock.ROTATION));
+        }
+
+        if (block == Blocks.BLUE_CONCRETE || block == Blocks.RED_CONCRETE) {
+            return (defenders ? Blocks.BLUE_CONCRETE : Blocks.RED_CONCRETE).getDefaultState();
+        }
+
+        return null;
+    }
+
+    public int size() {
+        return this.positions.length;
+    }
+
+    public void apply(ServerWorld world, GameTeam team) {
+        BlockState[] states = team == SiegeTeams.DEFENDERS ? this.defenderStates : this.attackerStates;
+        SectionBlockWriter writer = new SectionBlockWriter(world);
+        BlockPos.Mutable mutablePos = new BlockPos.Mutable();
+
+        for (int i = 0; i < this.positions.length; i++) {
+            writer.set(mutablePos.set(this.positions[i]), states[i]);
+        }
+
+        writer.flush();
+    }
+}
@@ -1,71 +1,39 @@
 package io.github.restioson.siege.game.map;
 
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.collection.PackedIntegerArray;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
+import org.jetbrains.annotations.Nullable;
 import xyz.nucleoid.map_templates.BlockBounds;
+import xyz.nucleoid.map_templates.MapTemplate;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 
+// Slides a portcullis up and down. Its layers are captured from the template when the map is loaded, and stored like
+// chunk sections: a palette of the states in the portcullis, shared by every layer, and each layer's palette indices
+// packed into as few bits as the palette needs. The layers never change, so every game on the map shares them.
 public final class GateSlider {
-    private final BlockBounds bounds;
-    private final int maxOffset;
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
 
-    private final int height;
-    private Slice[] slices;
-    private Slice emptySlice;
+    private final Layers layers;
+    private final int maxOffset;
 
     private int offset;
 
-    public GateSlider(BlockBounds bounds, int maxOffset) {
-        this.bounds = bounds;
-        this.maxOffset = maxOffset;
-
-        this.height = bounds.max().getY() - bounds.min().getY() + 1;
-    }
-
-    private Slice[] getSlices(ServerWorld world) {
-        if (this.slices != null) {
-            return this.slices;
-        }
-
-        BlockPos min = this.bounds.min();
-        BlockPos max = this.bounds.max();
-
-        int sizeX = max.getX() - min.getX() + 1;
-        int sizeZ = max.getZ() - min.getZ() + 1;
-
-        this.slices = new Slice[this.height];
-        this.emptySlice = new Slice(sizeX, sizeZ);
-
-        BlockPos.Mutable mutablePos = new BlockPos.Mutable();
-
-        for (int y = 0; y < this.height; y++) {
-            Slice slice = new Slice(sizeX, sizeZ);
+    // The number of blocks written by the last move, and by every move so far
+    public int lastMoveBlocksWritten;
+    public int blocksWritten;
+    public int moves;
 
-            for (int z = 0; z < sizeZ; z++) {
-                for (int x = 0; x < sizeX; x++) {
-                    mutablePos.set(x + min.getX(), y + min.getY(), z + min.getZ());
-                    BlockState state = world.getBlockState(mutablePos);
-
-                    slice.set(x, z, state);
-                }
-            }
-
-            this.slices[y] = slice;
-        }
-
-        return this.slices;
-    }
-
-    private Slice getSlice(ServerWorld world, int y) {
-        Slice[] slices = this.getSlices(world);
-        if (y < 0 || y >= slices.length) {
-            return this.emptySlice;
-        }
-        return slices[y];
+    public GateSlider(Layers layers, int maxOffset) {
+        this.layers = layers;
+        this.maxOffset = maxOffset;
     }
 
     public void set(ServerWorld world, int offset) {
@@ -74,14 +42,27 @@ public final class GateSlider {
             return;
         }
 
+        int previousOffset = this.offset;
         this.offset = offset;
 
-        BlockPos min = this.bounds.min();
+        Layers layers = this.layers;
+        SectionBlockWriter writer = new SectionBlockWriter(world);
+        int written = 0;
 
-        for (int y = 0; y < this.height; y++) {
-            Slice slice = this.getSlice(world, y - offset);
-            slice.applyAt(world, min, y);
+        // Only the rows whose layer shifts are written. Those are diffed against the state actually in the world rather
+        // than the previous layer, so anything placed inside the portcullis is cleared once the portcullis covers it.
+        for (int y = 0; y < layers.height; y++) {
+            PackedIntegerArray layer = layers.get(y - offset);
+            if (layer != layers.get(y - previousOffset)) {
+                written += layers.applyAt(writer, layer, y);
+            }
         }
+
+        writer.flush();
+
+        this.lastMoveBlocksWritten = written;
+        this.blocksWritten += written;
+        this.moves += 1;
     }
 
     public int getMaxOffset() {
@@ -96,41 +77,107 @@ public final class GateSlider {
         this.set(world, 0);
     }
 
-    static class Slice {
-        final BlockState[] states;
-        final int sizeX;
-        final int sizeZ;
+    public static final class Layers {
+        private final BlockBounds bounds;
 
-        Slice(int sizeX, int sizeZ) {
-            this.states = new BlockState[sizeX * sizeZ];
-            Arrays.fill(this.states, Blocks.AIR.getDefaultState());
+        private final int height;
+        private final int sizeX;
+        private final int sizeZ;
 
-            this.sizeX = sizeX;
-            this.sizeZ = sizeZ;
-        }
+        // Air is always at index 0, so that layers above or below the portcullis don't need storing
+        private final BlockState[] palette;
+        // The palette indices of each layer, or null if the layer is all air
+        private final PackedIntegerArray[] layers;
+
+        private Layers(BlockBounds bounds, BlockState[] palette, PackedIntegerArray[] layers) {
+            this.bounds = bounds;
 
-        void set(int x, int z, BlockState state) {
-            this.states[this.index(x, z)] = state;
+            BlockPos min = bounds.min();
+            BlockPos max = bounds.max();
+            this.height = max.getY() - min.getY() + 1;
+            this.sizeX = max.getX() - min.getX() + 1;
+            this.sizeZ = max.getZ() - min.getZ() + 1;
+
+            this.palette = palette;
+            this.layers = layers;
         }
 
-        void applyAt(ServerWorld world, BlockPos min, int y) {
+        public static Layers capture(MapTemplate template, BlockBounds bounds) {
+            BlockPos min = bounds.min();
+            BlockPos max = bounds.max();
+
+            int height = max.getY() - min.getY() + 1;
+            int sizeX = max.getX() - min.getX() + 1;
+            int sizeZ = max.getZ() - min.getZ() + 1;
+
+            List<BlockState> palette = new ArrayList<>();
+            Reference2IntMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+            palette.add(AIR);
+            paletteIds.put(AIR, 0);
+
+            int[][] indices = new int[height][sizeX * sizeZ];
             BlockPos.Mutable mutablePos = new BlockPos.Mutable();
 
-            for (int z = 0; z < this.sizeZ; z++) {
-                for (int x = 0; x < this.sizeX; x++) {
-                    mutablePos.set(min, x, y, z);
-                    BlockState state = this.get(x, z);
-                    world.setBlockState(mutablePos, state);
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < sizeZ; z++) {
+                    for (int x = 0; x < sizeX; x++) {
+                        BlockState state = template.getBlockState(mutablePos.set(x + min.getX(), y + min.getY(), z + min.getZ()));
+
+                        int id = paletteIds.computeIfAbsent(state, key -> {
+                            palette.add(state);
+                            return palette.size() - 1;
+                        });
+                        indices[y][x + z * sizeX] = id;
+                    }
                 }
             }
+
+            int bits = Math.max(1, MathHelper.ceilLog2(palette.size()));
+            PackedIntegerArray[] layers = new PackedIntegerArray[height];
+
+            for (int y = 0; y < height; y++) {
+                PackedIntegerArray layer = null;
+
+                int[] layerIndices = indices[y];
+                for (int i = 0; i < layerIndices.length; i++) {
+                    if (layerIndices[i] != 0) {
+                        if (layer == null) {
+                            layer = new PackedIntegerArray(bits, layerIndices.length);
+                        }
+                        layer.set(i, layerIndices[i]);
+                    }
+                }
+
+                layers[y] = layer;
+            }
+
+            return new Layers(bounds, palette.toArray(new BlockState[0]), layers);
         }
 
-        BlockState get(int x, int z) {
-            return this.states[this.index(x, z)];
+        @Nullable
+        PackedIntegerArray get(int y) {
+            if (y < 0 || y >= this.height) {
+                return null;
+            }
+            return this.layers[y];
         }
 
-        int index(int x, int z) {
-            return x + z * this.sizeX;
+        // Applies a layer at the given y, returning the number of blocks that differed from the world
+        int applyAt(SectionBlockWriter writer, @Nullable PackedIntegerArray layer, int y) {
+            BlockPos min = this.bounds.min();
+            int written = 0;
+
+            for (int z = 0; z < this.sizeZ; z++) {
+                for (int x = 0; x < this.sizeX; x++) {
+                    int index = x + z * this.sizeX;
+                    int id = layer != null ? layer.get(index) : 0;
+                    if (writer.set(min.getX() + x, min.getY() + y, min.getZ() + z, this.palette[id])) {
+                        written++;
+                    }
+                }
+            }
+
+            return written;
         }
     }
 }
@@ -0,0 +1,77 @@
+package io.github.restioson.siege.game.map;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import xyz.nucleoid.map_templates.MapTemplateMetadata;
+import xyz.nucleoid.map_templates.TemplateRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Every region in a template's metadata, grouped by marker and then by id in a single pass, so that resolving the
+// regions which belong to a flag or gate is a lookup rather than another stream over every region. Ids are matched
+// ignoring case, as the loader always has.
+final class RegionIndex {
+    private final Map<String, List<TemplateRegion>> byMarker = new Object2ObjectOpenHashMap<>();
+    private final Map<String, Map<String, List<TemplateRegion>>> byMarkerAndId = new Object2ObjectOpenHashMap<>();
+    private int size;
+
+    private RegionIndex() {
+    }
+
+    static RegionIndex build(MapTemplateMetadata metadata) {
+        RegionIndex index = new RegionIndex();
+
+        metadata.getRegions().forEach(region -> {
+            String marker = region.getMarker();
+            index.byMarker.computeIfAbsent(marker, m -> new ArrayList<>()).add(region);
+            index.size++;
+
+            String id = region.getData().getString("id");
+            if (!id.isEmpty()) {
+                index.byMarkerAndId.computeIfAbsent(marker, m -> new Object2ObjectOpenHashMap<>())
+                        .computeIfAbsent(normalizeId(id), i -> new ArrayList<>())
+                        .add(region);
+            }
+        });
+
+        return index;
+    }
+
+    // The number of regions indexed
+    int size() {
+        return this.size;
+    }
+
+    // Every region with this marker, in template order
+    List<TemplateRegion> get(String marker) {
+        return this.byMarker.getOrDefault(marker, List.of());
+    }
+
+    // Every region with this marker and id, in template order
+    List<TemplateRegion> get(String marker, String id) {
+        Map<String, List<TemplateRegion>> byId = this.byMarkerAndId.get(marker);
+        if (byId == null) {
+            return List.of();
+        }
+        return byId.getOrDefault(normalizeId(id), List.of());
+    }
+
+    @Nullable
+    TemplateRegion getFirst(String marker) {
+        List<TemplateRegion> regions = this.get(marker);
+        return regions.isEmpty() ? null : regions.get(0);
+    }
+
+    @Nullable
+    TemplateRegion getFirst(String marker, String id) {
+        List<TemplateRegion> regions = this.get(marker, id);
+        return regions.isEmpty() ? null : regions.get(0);
+    }
+
+    static String normalizeId(String id) {
+        return id.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.restioson.siege.game.map;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+// Writes blocks straight into chunk sections, without neighbour or shape updates. Changed blocks are still marked on
+// the chunk holder, which sends them at the end of the tick as a single delta packet per section. Light checks are
+// queued until the writer is flushed, so that a batch of writes only refreshes each position's light once.
+public final class SectionBlockWriter {
+    private static final Heightmap.Type[] HEIGHTMAPS = new Heightmap.Type[] {
+            Heightmap.Type.MOTION_BLOCKING,
+            Heightmap.Type.MOTION_BLOCKING_NO_LEAVES,
+            Heightmap.Type.OCEAN_FLOOR,
+            Heightmap.Type.WORLD_SURFACE
+    };
+
+    private final ServerWorld world;
+    private final BlockPos.Mutable mutablePos = new BlockPos.Mutable();
+    private final LongSet lightChecks = new LongOpenHashSet();
+
+    private WorldChunk chunk;
+
+    public SectionBlockWriter(ServerWorld world) {
+        this.world = world;
+    }
+
+    public boolean set(BlockPos pos, BlockState state) {
+        return this.set(pos.getX(), pos.getY(), pos.getZ(), state);
+    }
+
+    // Returns whether the block was changed
+    public boolean set(int x, int y, int z, BlockState state) {
+        BlockPos.Mutable pos = this.mutablePos.set(x, y, z);
+        WorldChunk chunk = this.getChunk(x >> 4, z >> 4);
+
+        int sectionIndex = chunk.getSectionIndex(y);
+        if (sectionIndex < 0 || sectionIndex >= chunk.getSectionArray().length) {
+            return false;
+        }
+
+        ChunkSection section = chunk.getSection(sectionIndex);
+        BlockState previous = section.getBlockState(x & 15, y & 15, z & 15);
+        if (previous == state) {
+            return false;
+        }
+
+        // Block entities need to be created and removed by the world
+        if (previous.hasBlockEntity() || state.hasBlockEntity()) {
+            return this.world.setBlockState(pos, state, Block.NOTIFY_LISTENERS | Block.FORCE_STATE);
+        }
+
+        boolean wasEmpty = section.isEmpty();
+        section.setBlockState(x & 15, y & 15, z & 15, state);
+
+        for (Heightmap.Type type : HEIGHTMAPS) {
+            chunk.getHeightmap(type).trackUpdate(x & 15, y, z & 15, state);
+        }
+
+        LightingProvider lighting = this.world.getChunkManager().getLightingProvider();
+        boolean isEmpty = section.isEmpty();
+        if (wasEmpty != isEmpty) {
+            lighting.setSectionStatus(pos, isEmpty);
+        }
+
+        if (previous.getOpacity(this.world, pos) != state.getOpacity(this.world, pos)
+                || previous.getLuminance() != state.getLuminance()
+                || previous.hasSidedTransparency() || state.hasSidedTransparency()) {
+            this.lightChecks.add(pos.asLong());
+        }
+
+        chunk.setNeedsSaving(true);
+        this.world.getChunkManager().markForUpdate(pos);
+
+        return true;
+    }
+
+    public void flush() {
+        if (this.lightChecks.isEmpty()) {
+            return;
+        }
+
+        LightingProvider lighting = this.world.getChunkManager().getLightingProvider();
+        LongIterator iterator = this.lightChecks.iterator();
+        while (iterator.hasNext()) {
+            lighting.checkBlock(this.mutablePos.set(iterator.nextLong()));
+        }
+
+        this.lightChecks.clear();
+    }
+
+    private WorldChunk getChunk(int chunkX, int chunkZ) {
+        WorldChunk chunk = this.chunk;
+        if (chunk == null || chunk.getPos().x != chunkX || chunk.getPos().z != chunkZ) {
+            this.chunk = chunk = this.world.getChunk(chunkX, chunkZ);
+        }
+        return chunk;
+    }
+}
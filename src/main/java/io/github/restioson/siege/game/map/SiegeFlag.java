@@ -4,7 +4,7 @@ import io.github.restioson.siege.entity.SiegeKitStandEntity;
 import io.github.restioson.siege.game.SiegeTeams;
 import io.github.restioson.siege.game.active.CapturingState;
 import io.github.restioson.siege.game.active.SiegeCaptureLogic;
-import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import net.minecraft.entity.boss.BossBar;
 import net.minecraft.entity.boss.ServerBossBar;
 import net.minecraft.item.ItemStack;
@@ -15,17 +15,18 @@ import xyz.nucleoid.map_templates.BlockBounds;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 public final class SiegeFlag {
+    private static final int BAR_NOTCHES = 10;
+
     public final String id;
     public final String name;
     public final BlockBounds bounds;
     public boolean capturable = true;
     public boolean pluralName = false;
-    public List<BlockBounds> flagIndicatorBlocks;
+    public FlagIndicator indicator = FlagIndicator.EMPTY;
     public List<SiegeKitStandEntity> kitStands;
 
     @Nullable
@@ -48,8 +49,30 @@ public final class SiegeFlag {
     public List<SiegeFlag> prerequisiteFlags = new ArrayList<>();
     public List<SiegeFlag> recapturePrerequisites = new ArrayList<>();
 
+    SiegeFlagGraph graph;
+    int graphIndex;
+
     public final ServerBossBar captureBar = new ServerBossBar(Text.literal("Capturing"), BossBar.Color.RED, BossBar.Style.NOTCHED_10);
-    private final Set<ServerPlayerEntity> capturingPlayers = new ReferenceOpenHashSet<>();
+
+    // Capture bar viewers are tracked by participant index. Each update stamps the players present with a new
+    // generation, so anyone still holding the previous generation afterwards has left the flag. The entity added to
+    // the bar is kept for each index, so that it is always the one removed, even once the player has gone offline.
+    private int[] viewerGenerations = new int[16];
+    private ServerPlayerEntity[] viewerPlayers = new ServerPlayerEntity[16];
+    private int viewerGeneration = 1;
+    private IntArrayList viewers = new IntArrayList();
+    private IntArrayList nextViewers = new IntArrayList();
+
+    // What was last sent to the capture bar, so that only real changes produce packets. Boss bars start visible.
+    private boolean barVisible = true;
+    @Nullable
+    private CapturingState barState;
+    private int barNotch = -1;
+    @Nullable
+    private BossBar.Color barColor;
+
+    // The number of boss bar packets sent for this flag
+    public int captureBarPackets;
 
     public SiegeFlag(String id, String name, GameTeam team, BlockBounds bounds) {
         this.id = id;
@@ -85,21 +108,7 @@ public final class SiegeFlag {
     }
 
     public boolean isReadyForCapture() {
-        if (this.team == SiegeTeams.ATTACKERS) {
-            for (SiegeFlag flag : this.recapturePrerequisites) {
-                if (flag.team == this.team) {
-                    return false;
-                }
-            }
-        }
-
-        for (SiegeFlag flag : this.prerequisiteFlags) {
-            if (flag.team == this.team) {
-                return false;
-            }
-        }
-
-        return true;
+        return this.graph.isReadyForCapture(this);
     }
 
     public boolean incrementCapture(GameTeam team, int amount) {
@@ -107,9 +116,14 @@ public final class SiegeFlag {
 
         if (this.captureProgressTicks >= SiegeCaptureLogic.CAPTURE_TIME_TICKS) {
             this.captureProgressTicks = 0;
-            this.team = team;
             this.capturingState = null;
 
+            GameTeam previous = this.team;
+            this.team = team;
+            if (previous != team) {
+                this.graph.onTeamChanged(this, previous);
+            }
+
             return true;
         }
 
@@ -129,44 +143,115 @@ public final class SiegeFlag {
         return false;
     }
 
-    public void updateCapturingPlayers(Collection<ServerPlayerEntity> players) {
-        for (ServerPlayerEntity player : players) {
-            if (this.capturingPlayers.add(player)) {
-                this.captureBar.addPlayer(player);
+    public void beginCaptureBarViewers() {
+        this.viewerGeneration++;
+        this.nextViewers.clear();
+    }
+
+    public void addCaptureBarViewer(int index, ServerPlayerEntity player) {
+        if (index >= this.viewerGenerations.length) {
+            int length = Math.max(index + 1, this.viewerGenerations.length * 2);
+            this.viewerGenerations = Arrays.copyOf(this.viewerGenerations, length);
+            this.viewerPlayers = Arrays.copyOf(this.viewerPlayers, length);
+        }
+
+        ServerPlayerEntity viewing = this.viewerGenerations[index] == this.viewerGeneration - 1 ? this.viewerPlayers[index] : null;
+        if (viewing != player) {
+            // The same participant may have a new entity after respawning or reconnecting
+            if (viewing != null) {
+                this.captureBar.removePlayer(viewing);
+                this.captureBarPackets += 1;
             }
+
+            this.captureBar.addPlayer(player);
+            this.captureBarPackets += 1;
+            this.viewerPlayers[index] = player;
         }
 
-        this.capturingPlayers.removeIf(player -> {
-            if (!players.contains(player)) {
-                this.captureBar.removePlayer(player);
-                return true;
+        this.viewerGenerations[index] = this.viewerGeneration;
+        this.nextViewers.add(index);
+    }
+
+    public void endCaptureBarViewers() {
+        IntArrayList viewers = this.viewers;
+        for (int i = 0; i < viewers.size(); i++) {
+            int index = viewers.getInt(i);
+            if (this.viewerGenerations[index] != this.viewerGeneration) {
+                this.captureBar.removePlayer(this.viewerPlayers[index]);
+                this.captureBarPackets += 1;
+                this.viewerPlayers[index] = null;
             }
-            return false;
-        });
+        }
+
+        this.viewers = this.nextViewers;
+        this.nextViewers = viewers;
+    }
+
+    // Removes a participant who is leaving the game, so that their index can be reused
+    public void removeCaptureBarViewer(int index) {
+        if (this.viewers.rem(index)) {
+            this.captureBar.removePlayer(this.viewerPlayers[index]);
+            this.captureBarPackets += 1;
+        }
+
+        if (index < this.viewerGenerations.length) {
+            this.viewerGenerations[index] = 0;
+            this.viewerPlayers[index] = null;
+        }
     }
 
     public void updateCaptureBar() {
-        if (this.capturingState != null) {
-            this.captureBar.setVisible(true);
-            this.captureBar.setName(this.capturingState.getName());
-            this.captureBar.setPercent((float) this.captureProgressTicks / SiegeCaptureLogic.CAPTURE_TIME_TICKS);
-
-            BossBar.Color color;
-            if (this.capturingState != CapturingState.CONTESTED) {
-                color = this.team == SiegeTeams.ATTACKERS ? BossBar.Color.RED : BossBar.Color.BLUE;
-            } else {
-                color = BossBar.Color.WHITE;
-            }
+        CapturingState state = this.capturingState;
+        boolean visible = state != null;
 
-            this.captureBar.setColor(color);
+        if (visible != this.barVisible) {
+            this.barVisible = visible;
+            this.captureBar.setVisible(visible);
+            this.countBarPacket();
+        }
+
+        if (!visible) {
+            return;
+        }
+
+        if (state != this.barState) {
+            this.barState = state;
+            this.captureBar.setName(state.getName());
+            this.countBarPacket();
+        }
+
+        // Quantise to the notches shown on the bar, so that progress only updates when it moves a notch
+        int notch = this.captureProgressTicks * BAR_NOTCHES / SiegeCaptureLogic.CAPTURE_TIME_TICKS;
+        if (notch != this.barNotch) {
+            this.barNotch = notch;
+            this.captureBar.setPercent((float) notch / BAR_NOTCHES);
+            this.countBarPacket();
+        }
+
+        BossBar.Color color;
+        if (state != CapturingState.CONTESTED) {
+            color = this.team == SiegeTeams.ATTACKERS ? BossBar.Color.RED : BossBar.Color.BLUE;
         } else {
-            this.captureBar.setVisible(false);
+            color = BossBar.Color.WHITE;
         }
+
+        if (color != this.barColor) {
+            this.barColor = color;
+            this.captureBar.setColor(color);
+            this.countBarPacket();
+        }
+    }
+
+    private void countBarPacket() {
+        this.captureBarPackets += this.viewers.size();
     }
 
     public void closeCaptureBar() {
         this.captureBar.clearPlayers();
         this.captureBar.setVisible(false);
+        this.viewers.clear();
+        Arrays.fill(this.viewerPlayers, null);
+        this.barVisible = false;
     }
 
     public boolean isFrontLine(long time) {
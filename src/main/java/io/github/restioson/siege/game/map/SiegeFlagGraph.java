@@ -0,0 +1,159 @@
+package io.github.restioson.siege.game.map;
+
+import io.github.restioson.siege.Siege;
+import io.github.restioson.siege.game.SiegeTeams;
+import xyz.nucleoid.plasmid.game.common.team.GameTeam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The prerequisite relations between flags, along with how many of each flag's prerequisites every team holds. These
+// counts are only updated when a flag changes hands, so checking whether a flag is ready for capture or whether a team
+// holds every flag doesn't need to walk the flags.
+public final class SiegeFlagGraph {
+    private final List<SiegeFlag> flags;
+
+    // The flags which list each flag as a prerequisite, indexed by flag
+    private final SiegeFlag[][] dependents;
+    private final SiegeFlag[][] recaptureDependents;
+
+    private final int[] prerequisitesHeldByAttackers;
+    private final int[] prerequisitesHeldByDefenders;
+    private final int[] recapturePrerequisitesHeldByAttackers;
+
+    private int flagsHeldByAttackers;
+    private int flagsHeldByDefenders;
+
+    private SiegeFlagGraph(List<SiegeFlag> flags) {
+        this.flags = flags;
+
+        int count = flags.size();
+        this.dependents = new SiegeFlag[count][];
+        this.recaptureDependents = new SiegeFlag[count][];
+        this.prerequisitesHeldByAttackers = new int[count];
+        this.prerequisitesHeldByDefenders = new int[count];
+        this.recapturePrerequisitesHeldByAttackers = new int[count];
+    }
+
+    public static SiegeFlagGraph build(List<SiegeFlag> flags) {
+        SiegeFlagGraph graph = new SiegeFlagGraph(flags);
+
+        List<List<SiegeFlag>> dependents = new ArrayList<>();
+        List<List<SiegeFlag>> recaptureDependents = new ArrayList<>();
+
+        for (int i = 0; i < flags.size(); i++) {
+            SiegeFlag flag = flags.get(i);
+            flag.graph = graph;
+            flag.graphIndex = i;
+
+            dependents.add(new ArrayList<>());
+            recaptureDependents.add(new ArrayList<>());
+        }
+
+        for (SiegeFlag flag : flags) {
+            for (SiegeFlag prerequisite : flag.prerequisiteFlags) {
+                dependents.get(prerequisite.graphIndex).add(flag);
+                graph.countPrerequisite(flag, prerequisite.team, 1);
+            }
+
+            for (SiegeFlag prerequisite : flag.recapturePrerequisites) {
+                recaptureDependents.get(prerequisite.graphIndex).add(flag);
+                if (prerequisite.team == SiegeTeams.ATTACKERS) {
+                    graph.recapturePrerequisitesHeldByAttackers[flag.graphIndex] += 1;
+                }
+            }
+
+            graph.countFlag(flag.team, 1);
+        }
+
+        for (int i = 0; i < flags.size(); i++) {
+            graph.dependents[i] = dependents.get(i).toArray(new SiegeFlag[0]);
+            graph.recaptureDependents[i] = recaptureDependents.get(i).toArray(new SiegeFlag[0]);
+        }
+
+        graph.warnOnCycles();
+
+        return graph;
+    }
+
+    public boolean isReadyForCapture(SiegeFlag flag) {
+        int index = flag.graphIndex;
+        if (flag.team == SiegeTeams.ATTACKERS) {
+            return this.recapturePrerequisitesHeldByAttackers[index] == 0 && this.prerequisitesHeldByAttackers[index] == 0;
+        } else if (flag.team == SiegeTeams.DEFENDERS) {
+            return this.prerequisitesHeldByDefenders[index] == 0;
+        }
+        return true;
+    }
+
+    public boolean allHeldBy(GameTeam team) {
+        if (team == SiegeTeams.ATTACKERS) {
+            return this.flagsHeldByAttackers == this.flags.size();
+        } else if (team == SiegeTeams.DEFENDERS) {
+            return this.flagsHeldByDefenders == this.flags.size();
+        }
+        return false;
+    }
+
+    void onTeamChanged(SiegeFlag flag, GameTeam previous) {
+        GameTeam team = flag.team;
+
+        this.countFlag(previous, -1);
+        this.countFlag(team, 1);
+
+        for (SiegeFlag dependent : this.dependents[flag.graphIndex]) {
+            this.countPrerequisite(dependent, previous, -1);
+            this.countPrerequisite(dependent, team, 1);
+        }
+
+        int recaptureChange = (team == SiegeTeams.ATTACKERS ? 1 : 0) - (previous == SiegeTeams.ATTACKERS ? 1 : 0);
+        if (recaptureChange != 0) {
+            for (SiegeFlag dependent : this.recaptureDependents[flag.graphIndex]) {
+                this.recapturePrerequisitesHeldByAttackers[dependent.graphIndex] += recaptureChange;
+            }
+        }
+    }
+
+    private void countPrerequisite(SiegeFlag flag, GameTeam team, int amount) {
+        if (team == SiegeTeams.ATTACKERS) {
+            this.prerequisitesHeldByAttackers[flag.graphIndex] += amount;
+        } else if (team == SiegeTeams.DEFENDERS) {
+            this.prerequisitesHeldByDefenders[flag.graphIndex] += amount;
+        }
+    }
+
+    private void countFlag(GameTeam team, int amount) {
+        if (team == SiegeTeams.ATTACKERS) {
+            this.flagsHeldByAttackers += amount;
+        } else if (team == SiegeTeams.DEFENDERS) {
+            this.flagsHeldByDefenders += amount;
+        }
+    }
+
+    // A cycle of prerequisites can never be captured while the whole cycle is held by one team
+    private void warnOnCycles() {
+        // 0 = unvisited, 1 = on the current path, 2 = done
+        int[] state = new int[this.flags.size()];
+        for (SiegeFlag flag : this.flags) {
+            this.visit(flag, state);
+        }
+    }
+
+    private void visit(SiegeFlag flag, int[] state) {
+        int index = flag.graphIndex;
+        if (state[index] == 2) {
+            return;
+        }
+
+        if (state[index] == 1) {
+            Siege.LOGGER.warn("Flag \"{}\" is part of a prerequisite cycle!", flag.id);
+            return;
+        }
+
+        state[index] = 1;
+        for (SiegeFlag prerequisite : flag.prerequisiteFlags) {
+            this.visit(prerequisite, state);
+        }
+        state[index] = 2;
+    }
+}
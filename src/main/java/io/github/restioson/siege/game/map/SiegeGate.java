@@ -1,13 +1,13 @@
 package io.github.restioson.siege.game.map;
 
 import io.github.restioson.siege.game.active.SiegeActive;
+import io.github.restioson.siege.game.active.SiegeOccupancy;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 import org.jetbrains.annotations.Nullable;
 import xyz.nucleoid.map_templates.BlockBounds;
-import xyz.nucleoid.plasmid.util.PlayerRef;
 
 public class SiegeGate {
     public final SiegeFlag flag;
@@ -23,10 +23,14 @@ public class SiegeGate {
     private int openSlide;
     public long timeOfLastBash;
 
+    // Whether the gate is being raised rather than lowered, and the fraction of a row it has moved towards that
+    public boolean opening;
+    public float pendingRows;
+
     @Nullable
     public BlockBounds brace;
 
-    public SiegeGate(SiegeFlag flag, BlockBounds gateOpen, BlockBounds portcullis, @Nullable BlockBounds brace, int retractHeight, int repairedHealthThreshold, int maxHealth) {
+    public SiegeGate(SiegeFlag flag, BlockBounds gateOpen, BlockBounds portcullis, @Nullable BlockBounds brace, GateSlider slider, int retractHeight, int repairedHealthThreshold, int maxHealth) {
         this.flag = flag;
         this.gateOpen = gateOpen;
         this.portcullis = portcullis;
@@ -37,36 +41,55 @@ public class SiegeGate {
         this.repairedHealthThreshold = repairedHealthThreshold;
         this.maxHealth = maxHealth;
 
-        this.slider = new GateSlider(portcullis, retractHeight);
+        this.slider = slider;
 
         this.brace = brace;
     }
 
-    public void broadcastHealth(ServerPlayerEntity initiator, SiegeActive active, ServerWorld world) {
+    public void broadcastHealth(ServerPlayerEntity initiator, SiegeActive active) {
         Text text = Text.literal("Gate health: ").append(Integer.toString(this.health)).formatted(Formatting.DARK_GREEN);
         initiator.sendMessage(text, true);
-        for (PlayerRef ref : active.participants.keySet()) {
-            ref.ifOnline(world, p -> {
-                if (this.gateOpen.contains(p.getBlockPos()) && p != initiator) {
-                    p.sendMessage(text, true);
-                }
-            });
+        for (SiegeOccupancy.Occupant occupant : active.occupancy.gateZone(this).occupants()) {
+            ServerPlayerEntity player = occupant.player;
+            if (player != null && player != initiator) {
+                player.sendMessage(text, true);
+            }
         }
     }
 
-    public boolean tickOpen(ServerWorld world) {
-        if (this.openSlide >= this.slider.getMaxOffset()) {
-            return false;
-        }
-        this.slider.set(world, ++this.openSlide);
-        return true;
+    public boolean isMoving() {
+        return this.openSlide != this.targetSlide();
     }
 
-    public boolean tickClose(ServerWorld world) {
-        if (this.openSlide <= 0) {
-            return false;
+    private int targetSlide() {
+        return this.opening ? this.slider.getMaxOffset() : 0;
+    }
+
+    // Moves the gate by up to the given number of rows towards its target, returning the number of blocks written
+    public int slide(ServerWorld world, int rows) {
+        int target = this.targetSlide();
+        int step = Math.min(rows, Math.abs(target - this.openSlide));
+        if (step == 0) {
+            return 0;
         }
-        this.slider.set(world, --this.openSlide);
-        return true;
+
+        this.openSlide += target > this.openSlide ? step : -step;
+        this.slider.set(world, this.openSlide);
+        return this.slider.lastMoveBlocksWritten;
+    }
+
+    public void bashOpen(ServerWorld world) {
+        this.slider.setOpen(world);
+        this.openSlide = this.slider.getMaxOffset();
+        this.pendingRows = 0.0f;
+        this.bashedOpen = true;
+    }
+
+    public void repair(ServerWorld world) {
+        this.slider.setClosed(world);
+        this.openSlide = 0;
+        this.opening = false;
+        this.pendingRows = 0.0f;
+        this.bashedOpen = false;
     }
 }
@@ -1,13 +1,10 @@
 package io.github.restioson.siege.game.map;
 
 import io.github.restioson.siege.game.SiegeTeams;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.gen.chunk.ChunkGenerator;
 import xyz.nucleoid.map_templates.BlockBounds;
-import xyz.nucleoid.map_templates.MapTemplate;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
 import xyz.nucleoid.plasmid.game.world.generator.TemplateChunkGenerator;
 
@@ -15,7 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class SiegeMap {
-    private final MapTemplate template;
+    private final SiegeMapTemplate shared;
     public final List<SiegeFlag> flags = new ArrayList<>();
     public final List<SiegeKitStandLocation> kitStands = new ArrayList<>();
     public final int attackerSpawnAngle;
@@ -23,16 +20,15 @@ public class SiegeMap {
     public SiegeSpawn waitingSpawn = null;
     public List<BlockBounds> noBuildRegions = new ArrayList<>();
     public List<SiegeGate> gates = new ArrayList<>();
+    public SiegeFlagGraph flagGraph;
     public SiegeSpawn attackerFirstSpawn;
     public SiegeSpawn defenderFirstSpawn;
     public long time;
 
-    private final LongSet protectedBlocks = new LongOpenHashSet();
-
-    public SiegeMap(MapTemplate template, int attackerSpawnAngle) {
-        this.template = template;
+    public SiegeMap(SiegeMapTemplate shared, int attackerSpawnAngle) {
+        this.shared = shared;
         this.attackerSpawnAngle = attackerSpawnAngle;
-        this.bounds = template.getBounds();
+        this.bounds = shared.template().getBounds();
         this.time = 1000;
     }
 
@@ -48,19 +44,15 @@ public class SiegeMap {
         this.waitingSpawn = spawn;
     }
 
-    public void addProtectedBlock(long pos) {
-        this.protectedBlocks.add(pos);
-    }
-
     public boolean isProtectedBlock(BlockPos pos) {
         return this.isProtectedBlock(pos.asLong());
     }
 
     public boolean isProtectedBlock(long pos) {
-        return this.protectedBlocks.contains(pos);
+        return this.shared.isProtectedBlock(pos);
     }
 
     public ChunkGenerator asGenerator(MinecraftServer server) {
-        return new TemplateChunkGenerator(server, this.template);
+        return new TemplateChunkGenerator(server, this.shared.template());
     }
 }
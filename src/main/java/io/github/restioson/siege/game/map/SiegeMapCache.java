@@ -0,0 +1,151 @@
+package io.github.restioson.siege.game.map;
+
+import io.github.restioson.siege.Siege;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Caches the protected blocks derived from a map template in a binary file under the server's run directory. The file
+// is keyed by a hash of the template file and its id, so it is rebuilt whenever the template changes. Anything that
+// goes wrong with the cache is logged and treated as a miss, so it can never stop a game from opening.
+//
+// Only the protected blocks are cached. Flags, gates, kit stands and spawns are still built from the template's
+// metadata on every open. The template has to be loaded anyway to generate the world, and building those objects is
+// one pass over the region index, while the protection scan covers every block of the template.
+final class SiegeMapCache {
+    private static final int MAGIC = 0x53494547;
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+
+    private static final byte FULL_SECTION = 0;
+    private static final byte PARTIAL_SECTION = 1;
+
+    private final Path path;
+    @Nullable
+    private final byte[] hash;
+
+    private SiegeMapCache(Path path, @Nullable byte[] hash) {
+        this.path = path;
+        this.hash = hash;
+    }
+
+    static SiegeMapCache open(MinecraftServer server, Identifier templateId, byte[] templateBytes) {
+        String fileName = templateId.getNamespace() + "_" + templateId.getPath().replace('/', '_') + ".bin";
+        Path path = server.getRunDirectory().toPath().resolve("siege_cache").resolve(fileName);
+        return new SiegeMapCache(path, hashTemplate(templateId, templateBytes));
+    }
+
+    @Nullable
+    private static byte[] hashTemplate(Identifier templateId, byte[] templateBytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(templateId.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(templateBytes);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            Siege.LOGGER.warn("Failed to hash map template {}, not caching it", templateId, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    BlockBitSet readProtectedBlocks() {
+        if (this.hash == null) {
+            return null;
+        }
+
+        // Read onto the heap rather than mapped, as a mapping would stop the file being replaced on Windows
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.path));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, this.hash)) {
+                return null;
+            }
+
+            BlockBitSet blocks = new BlockBitSet();
+
+            int sectionCount = buffer.getInt();
+            for (int i = 0; i < sectionCount; i++) {
+                long key = buffer.getLong();
+                if (buffer.get() == FULL_SECTION) {
+                    blocks.addFullSection(key);
+                } else {
+                    long[] words = BlockBitSet.newSection();
+                    for (int word = 0; word < words.length; word++) {
+                        words[word] = buffer.getLong();
+                    }
+                    blocks.addSection(key, words);
+                }
+            }
+
+            return blocks;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException e) {
+            Siege.LOGGER.warn("Failed to read map cache {}", this.path, e);
+            return null;
+        }
+    }
+
+    void writeProtectedBlocks(BlockBitSet blocks) {
+        if (this.hash == null) {
+            return;
+        }
+
+        int[] partialSections = new int[1];
+        blocks.forEachSection((key, words) -> {
+            if (words != null) {
+                partialSections[0]++;
+            }
+        });
+
+        int size = Integer.BYTES * 3 + HASH_LENGTH
+                + blocks.sectionCount() * (Long.BYTES + 1)
+                + partialSections[0] * BlockBitSet.WORDS * Long.BYTES;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put(this.hash);
+        buffer.putInt(blocks.sectionCount());
+
+        blocks.forEachSection((key, words) -> {
+            buffer.putLong(key);
+            if (words == null) {
+                buffer.put(FULL_SECTION);
+            } else {
+                buffer.put(PARTIAL_SECTION);
+                for (long word : words) {
+                    buffer.putLong(word);
+                }
+            }
+        });
+
+        // Write to a temporary file first, so that a half-written cache is never read
+        try {
+            Files.createDirectories(this.path.getParent());
+            Path temporaryPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            Files.write(temporaryPath, buffer.array());
+            Files.move(temporaryPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Siege.LOGGER.warn("Failed to write map cache {}", this.path, e);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package io.github.restioson.siege.game.map;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.github.restioson.siege.Siege;
 import io.github.restioson.siege.game.SiegeKit;
 import io.github.restioson.siege.game.SiegeTeams;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.fabricmc.fabric.api.util.NbtType;
 import net.minecraft.block.BlockState;
@@ -13,64 +15,120 @@ import net.minecraft.nbt.NbtList;
 import net.minecraft.registry.Registries;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
+import net.minecraft.resource.Resource;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.biome.BiomeKeys;
 import org.jetbrains.annotations.Nullable;
 import xyz.nucleoid.map_templates.*;
 import xyz.nucleoid.plasmid.game.GameOpenException;
 import xyz.nucleoid.plasmid.game.common.team.GameTeam;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class SiegeMapLoader {
+    // Keyed by template id. Each load is installed as a future, so that concurrent opens of the same template wait for
+    // one load without holding the map's lock. Templates are weakly held, so one is dropped once no game on it is left
+    // open, and the map is cleared on datapack reload so that an edited template is loaded again by the next game.
+    private static final Map<String, CompletableFuture<WeakReference<SiegeMapTemplate>>> SHARED_TEMPLATES = new ConcurrentHashMap<>();
+
+    // Maps are loaded on their own threads rather than the main worker executor, so that neither chunk generation for
+    // running games nor a thread waiting on the load is ever stuck behind template I/O and the protection scan
+    private static final ExecutorService LOAD_EXECUTOR = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+            .setNameFormat("Siege Map Loader #%d")
+            .setDaemon(true)
+            .build());
+
+    // A parallel stream forks into whichever pool it is started from, or the common pool otherwise. The protection scan
+    // gets its own small pool instead, so it can never take every thread of a pool that the server relies on.
+    private static final ForkJoinPool SCAN_POOL = new ForkJoinPool(
+            MathHelper.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("Siege Map Scan #" + thread.getPoolIndex());
+                return thread;
+            },
+            null,
+            false
+    );
+
     private final SiegeMapConfig config;
 
     public SiegeMapLoader(SiegeMapConfig config) {
         this.config = config;
     }
 
+    public CompletableFuture<SiegeMap> createAsync(MinecraftServer server) {
+        return CompletableFuture.supplyAsync(() -> this.create(server), LOAD_EXECUTOR);
+    }
+
     public SiegeMap create(MinecraftServer server) throws GameOpenException {
         try {
-            MapTemplate template = MapTemplateSerializer.loadFromResource(server, this.config.templateId());
+            long startTime = System.nanoTime();
+
+            SiegeMapTemplate shared = this.loadSharedTemplate(server);
+            MapTemplate template = shared.template();
             MapTemplateMetadata metadata = template.getMetadata();
 
-            SiegeMap map = new SiegeMap(template, this.config.attackerSpawnAngle());
+            long templateReadTime = System.nanoTime();
 
-            NbtCompound mapData = metadata.getData();
-            String biomeId = mapData.getString("biome");
-            if (!Strings.isNullOrEmpty(biomeId)) {
-                template.setBiome(RegistryKey.of(RegistryKeys.BIOME, new Identifier(biomeId)));
-            } else {
-                template.setBiome(BiomeKeys.PLAINS);
-            }
+            RegionIndex regions = RegionIndex.build(metadata);
+
+            long regionIndexTime = System.nanoTime();
 
+            SiegeMap map = new SiegeMap(shared, this.config.attackerSpawnAngle());
+
+            NbtCompound mapData = metadata.getData();
             if (mapData.contains("time")) {
                 map.time = mapData.getLong("time");
             }
 
-            TemplateRegion waitingSpawn = metadata.getFirstRegion("waiting_spawn");
+            TemplateRegion waitingSpawn = regions.getFirst("waiting_spawn");
             if (waitingSpawn == null) {
                 throw new GameOpenException(Text.literal("waiting_spawn region required but not found"));
             }
 
             map.setWaitingSpawn(new SiegeSpawn(waitingSpawn.getBounds(), waitingSpawn.getData().getFloat("yaw")));
 
-            this.addFlagsToMap(map, metadata);
-            map.kitStands.addAll(this.collectKitStands(map.flags, template));
+            long metadataParseTime = System.nanoTime();
 
-            for (BlockPos pos : template.getBounds()) {
-                BlockState state = template.getBlockState(pos);
-                if (!state.isAir()) {
-                    map.addProtectedBlock(pos.asLong());
-                }
-            }
+            Map<String, SiegeFlag> flags = this.addFlagsToMap(map, shared, regions);
+            map.kitStands.addAll(this.collectKitStands(flags, regions));
+
+            long flagWiringTime = System.nanoTime();
+
+            Siege.LOGGER.info(
+                    "Loaded map {} in {}ms (template {}ms, region index of {} regions {}ms, metadata parse {}ms, flag wiring {}ms)",
+                    this.config.templateId(),
+                    millisBetween(startTime, flagWiringTime),
+                    millisBetween(startTime, templateReadTime),
+                    regions.size(),
+                    millisBetween(templateReadTime, regionIndexTime),
+                    millisBetween(regionIndexTime, metadataParseTime),
+                    millisBetween(metadataParseTime, flagWiringTime)
+            );
 
             return map;
         } catch (IOException e) {
@@ -78,9 +136,189 @@ public class SiegeMapLoader {
         }
     }
 
-    private List<SiegeKitStandLocation> collectKitStands(List<SiegeFlag> flags, MapTemplate template) {
-        return template.getMetadata()
-                .getRegions("kit_stand")
+    // Games that are already open keep the template they loaded
+    public static void clearSharedTemplates() {
+        SHARED_TEMPLATES.clear();
+    }
+
+    // Returns the shared template data if another game on the same template is still running, or loads it otherwise
+    private SiegeMapTemplate loadSharedTemplate(MinecraftServer server) throws IOException {
+        Identifier templateId = this.config.templateId();
+        String key = templateId.toString();
+
+        SHARED_TEMPLATES.values().removeIf(SiegeMapLoader::isCleared);
+
+        while (true) {
+            CompletableFuture<WeakReference<SiegeMapTemplate>> loading = new CompletableFuture<>();
+            CompletableFuture<WeakReference<SiegeMapTemplate>> existing = SHARED_TEMPLATES.putIfAbsent(key, loading);
+
+            if (existing == null) {
+                try {
+                    SiegeMapTemplate template = loadTemplate(server, templateId);
+                    loading.complete(new WeakReference<>(template));
+                    return template;
+                } catch (IOException | RuntimeException e) {
+                    // Remove the entry before failing it, so that waiting opens retry the load rather than see it again
+                    SHARED_TEMPLATES.remove(key, loading);
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            SiegeMapTemplate shared;
+            try {
+                shared = existing.join().get();
+            } catch (CompletionException e) {
+                // The other load failed, so try it again here
+                continue;
+            }
+
+            if (shared != null) {
+                return shared;
+            }
+
+            SHARED_TEMPLATES.remove(key, existing);
+        }
+    }
+
+    private static boolean isCleared(CompletableFuture<WeakReference<SiegeMapTemplate>> future) {
+        return future.isDone() && !future.isCompletedExceptionally() && future.join().get() == null;
+    }
+
+    private static SiegeMapTemplate loadTemplate(MinecraftServer server, Identifier templateId) throws IOException {
+        long startTime = System.nanoTime();
+
+        // The template file is read once, and the same bytes are both decoded and hashed for the cache
+        byte[] templateBytes = readTemplateBytes(server, templateId);
+        MapTemplate template = MapTemplateSerializer.loadFrom(new ByteArrayInputStream(templateBytes));
+        SiegeMapCache cache = SiegeMapCache.open(server, templateId, templateBytes);
+
+        String biomeId = template.getMetadata().getData().getString("biome");
+        if (!Strings.isNullOrEmpty(biomeId)) {
+            template.setBiome(RegistryKey.of(RegistryKeys.BIOME, new Identifier(biomeId)));
+        } else {
+            template.setBiome(BiomeKeys.PLAINS);
+        }
+
+        long templateReadTime = System.nanoTime();
+
+        BlockBitSet protectedBlocks = cache.readProtectedBlocks();
+        boolean cached = protectedBlocks != null;
+        if (!cached) {
+            protectedBlocks = scanProtectedBlocks(template);
+            cache.writeProtectedBlocks(protectedBlocks);
+        }
+
+        long protectionScanTime = System.nanoTime();
+
+        Siege.LOGGER.info(
+                "Loaded template {} (template read {}ms, protection scan {}ms{})",
+                templateId,
+                millisBetween(startTime, templateReadTime),
+                millisBetween(templateReadTime, protectionScanTime),
+                cached ? ", cached" : ""
+        );
+
+        return new SiegeMapTemplate(template, protectedBlocks);
+    }
+
+    private static byte[] readTemplateBytes(MinecraftServer server, Identifier templateId) throws IOException {
+        Optional<Resource> resource = server.getResourceManager().getResource(MapTemplateSerializer.getResourcePathFor(templateId));
+        if (resource.isEmpty()) {
+            throw new IOException("No template found for " + templateId);
+        }
+
+        try (InputStream input = resource.get().getInputStream()) {
+            return input.readAllBytes();
+        }
+    }
+
+    // Finds every non-air block in the template. Each chunk section is scanned into its own bitset on the scan pool, and
+    // the non-empty sections are then merged.
+    private static BlockBitSet scanProtectedBlocks(MapTemplate template) {
+        BlockBounds bounds = template.getBounds();
+        BlockPos min = bounds.min();
+        BlockPos max = bounds.max();
+
+        LongArrayList sectionKeys = new LongArrayList();
+        for (int sectionY = min.getY() >> 4; sectionY <= max.getY() >> 4; sectionY++) {
+            for (int sectionZ = min.getZ() >> 4; sectionZ <= max.getZ() >> 4; sectionZ++) {
+                for (int sectionX = min.getX() >> 4; sectionX <= max.getX() >> 4; sectionX++) {
+                    sectionKeys.add(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ));
+                }
+            }
+        }
+
+        // The template is only read here, so scanning it from several threads is safe
+        List<ScannedSection> sections = SCAN_POOL.submit(() -> Arrays.stream(sectionKeys.toLongArray())
+                .parallel()
+                .mapToObj(key -> scanSection(template, min, max, key))
+                .filter(Objects::nonNull)
+                .toList()
+        ).join();
+
+        BlockBitSet protectedBlocks = new BlockBitSet();
+        for (ScannedSection section : sections) {
+            protectedBlocks.addSection(section.key(), section.words());
+        }
+
+        protectedBlocks.compact();
+        return protectedBlocks;
+    }
+
+    @Nullable
+    private static ScannedSection scanSection(MapTemplate template, BlockPos min, BlockPos max, long key) {
+        int originX = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(key));
+        int originY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(key));
+        int originZ = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(key));
+
+        // Only the part of the section inside the template bounds
+        int minX = Math.max(originX, min.getX());
+        int minY = Math.max(originY, min.getY());
+        int minZ = Math.max(originZ, min.getZ());
+        int maxX = Math.min(originX + 15, max.getX());
+        int maxY = Math.min(originY + 15, max.getY());
+        int maxZ = Math.min(originZ + 15, max.getZ());
+
+        long[] words = null;
+        BlockPos.Mutable mutablePos = new BlockPos.Mutable();
+
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    BlockState state = template.getBlockState(mutablePos.set(x, y, z));
+                    if (state.isAir()) {
+                        continue;
+                    }
+
+                    if (words == null) {
+                        words = BlockBitSet.newSection();
+                    }
+
+                    int index = BlockBitSet.index(x, y, z);
+                    words[index >> 6] |= 1L << index;
+                }
+            }
+        }
+
+        return words != null ? new ScannedSection(key, words) : null;
+    }
+
+    private static long millisBetween(long start, long end) {
+        return TimeUnit.NANOSECONDS.toMillis(end - start);
+    }
+
+    private record ScannedSection(long key, long[] words) {
+    }
+
+    private List<SiegeKitStandLocation> collectKitStands(Map<String, SiegeFlag> flags, RegionIndex regions) {
+        // Kit stands refer to flags ignoring case
+        Map<String, SiegeFlag> flagsByNormalizedId = new Object2ObjectOpenHashMap<>();
+        for (SiegeFlag flag : flags.values()) {
+            flagsByNormalizedId.putIfAbsent(RegionIndex.normalizeId(flag.id), flag);
+        }
+
+        return regions.get("kit_stand").stream()
                 .map(region -> {
                     NbtCompound data = region.getData();
                     GameTeam team = null;
@@ -90,7 +328,7 @@ public class SiegeMapLoader {
 
                     SiegeFlag flag = null;
                     if (data.contains("flag")) {
-                        flag = flags.stream().filter(f -> f.id.equalsIgnoreCase(data.getString("flag"))).findAny().orElse(null);
+                        flag = flagsByNormalizedId.get(RegionIndex.normalizeId(data.getString("flag")));
 
                         if (flag == null) {
                             Siege.LOGGER.error("Unknown flag \"{}\"", data.getString("flag"));
@@ -105,10 +343,12 @@ public class SiegeMapLoader {
                 .collect(Collectors.toList());
     }
 
-    private void addFlagsToMap(SiegeMap map, MapTemplateMetadata metadata) {
+    // Returns the flags by id
+    private Map<String, SiegeFlag> addFlagsToMap(SiegeMap map, SiegeMapTemplate shared, RegionIndex regions) {
+        MapTemplate template = shared.template();
         Map<String, SiegeFlag> flags = new Object2ObjectOpenHashMap<>();
 
-        metadata.getRegions("flag").forEach(region -> {
+        regions.get("flag").forEach(region -> {
             BlockBounds bounds = region.getBounds();
             NbtCompound data = region.getData();
             String id = data.getString("id");
@@ -135,7 +375,7 @@ public class SiegeMapLoader {
 
         map.flags.sort(Comparator.comparing(flag -> flag.name));
 
-        metadata.getRegions("flag").forEach(region -> {
+        regions.get("flag").forEach(region -> {
             NbtCompound data = region.getData();
             String flagId = data.getString("id");
 
@@ -170,13 +410,13 @@ public class SiegeMapLoader {
                 flag.recapturePrerequisites.add(prerequisite);
             }
 
-            flag.flagIndicatorBlocks = metadata.getRegions("flag_indicator")
-                    .filter(r -> flagId.equalsIgnoreCase(r.getData().getString("id")))
+            List<BlockBounds> indicatorRegions = regions.get("flag_indicator", flagId).stream()
                     .map(TemplateRegion::getBounds)
                     .collect(Collectors.toList());
+            flag.indicator = FlagIndicator.build(template, indicatorRegions);
         });
 
-        metadata.getRegions("respawn").forEach(region -> {
+        regions.get("respawn").forEach(region -> {
             NbtCompound data = region.getData();
             String flagId = data.getString("id");
             SiegeFlag flag = flags.get(flagId);
@@ -205,9 +445,11 @@ public class SiegeMapLoader {
             }
         });
 
-        map.noBuildRegions = metadata.getRegionBounds("no_build").collect(Collectors.toList());
+        map.noBuildRegions = regions.get("no_build").stream()
+                .map(TemplateRegion::getBounds)
+                .collect(Collectors.toList());
 
-        map.gates = metadata.getRegions("gate_open")
+        map.gates = regions.get("gate_open").stream()
                 .map(region -> {
                     NbtCompound data = region.getData();
 
@@ -217,13 +459,11 @@ public class SiegeMapLoader {
                         throw new GameOpenException(Text.literal("Gate missing flag with id '" + id + "'!"));
                     }
 
-                    TemplateRegion portcullisRegion = metadata.getRegions("portcullis")
-                            .filter(r -> id.equalsIgnoreCase(r.getData().getString("id")))
-                            .findFirst()
-                            .orElseThrow(() -> {
-                                Siege.LOGGER.error("Gate \"{}\" missing portcullis!", id);
-                                return new GameOpenException(Text.literal("Gate missing portcullis!"));
-                            });
+                    TemplateRegion portcullisRegion = regions.getFirst("portcullis", id);
+                    if (portcullisRegion == null) {
+                        Siege.LOGGER.error("Gate \"{}\" missing portcullis!", id);
+                        throw new GameOpenException(Text.literal("Gate missing portcullis!"));
+                    }
 
                     NbtCompound portcullisData = portcullisRegion.getData();
                     int retractHeight = portcullisData.getInt("retract_height");
@@ -240,18 +480,18 @@ public class SiegeMapLoader {
                         repairHealthThreshold = portcullisData.getInt("max_health");
                     }
 
-                    BlockBounds brace = metadata.getRegions("gate_brace")
-                            .filter(r -> id.equalsIgnoreCase(r.getData().getString("id")))
-                            .map(TemplateRegion::getBounds)
-                            .findFirst()
-                            .orElse(null);
+                    TemplateRegion braceRegion = regions.getFirst("gate_brace", id);
+                    BlockBounds brace = braceRegion != null ? braceRegion.getBounds() : null;
 
-                    SiegeGate gate = new SiegeGate(flag, region.getBounds(), portcullisRegion.getBounds(), brace, retractHeight, repairHealthThreshold, maxHealth);
+                    GateSlider slider = new GateSlider(shared.gateLayers(portcullisRegion.getBounds()), retractHeight);
+                    SiegeGate gate = new SiegeGate(flag, region.getBounds(), portcullisRegion.getBounds(), brace, slider, retractHeight, repairHealthThreshold, maxHealth);
                     flag.gate = gate;
                     return gate;
                 })
                 .collect(Collectors.toList());
 
+        map.flagGraph = SiegeFlagGraph.build(map.flags);
+
         for (SiegeFlag flag : flags.values()) {
             // TODO: remove this restriction (it's for warp enderpearl)
             if (flag.team == SiegeTeams.DEFENDERS && flag.defenderRespawn == null) {
@@ -259,6 +499,8 @@ public class SiegeMapLoader {
                 throw new GameOpenException(Text.literal("Flag missing respawn!"));
             }
         }
+
+        return flags;
     }
 
     private GameTeam parseTeam(NbtCompound data) {
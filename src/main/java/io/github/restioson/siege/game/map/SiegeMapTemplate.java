@@ -0,0 +1,33 @@
+package io.github.restioson.siege.game.map;
+
+import xyz.nucleoid.map_templates.BlockBounds;
+import xyz.nucleoid.map_templates.MapTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The parts of a map that never change during a game: the template itself, the blocks players may not break, and the
+// layers of each portcullis. These are shared by every game open on the same template, while each game builds its own
+// SiegeMap for its flags, gates and other match state.
+public final class SiegeMapTemplate {
+    private final MapTemplate template;
+    private final BlockBitSet protectedBlocks;
+    private final Map<BlockBounds, GateSlider.Layers> gateLayers = new ConcurrentHashMap<>();
+
+    SiegeMapTemplate(MapTemplate template, BlockBitSet protectedBlocks) {
+        this.template = template;
+        this.protectedBlocks = protectedBlocks;
+    }
+
+    public MapTemplate template() {
+        return this.template;
+    }
+
+    public boolean isProtectedBlock(long pos) {
+        return this.protectedBlocks.contains(pos);
+    }
+
+    public GateSlider.Layers gateLayers(BlockBounds portcullis) {
+        return this.gateLayers.computeIfAbsent(portcullis, bounds -> GateSlider.Layers.capture(this.template, bounds));
+    }
+}
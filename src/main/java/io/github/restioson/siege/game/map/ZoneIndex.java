@@ -0,0 +1,84 @@
+package io.github.restioson.siege.game.map;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import xyz.nucleoid.map_templates.BlockBounds;
+
+import java.util.List;
+import java.util.function.Function;
+
+// Maps chunk sections to the zones overlapping them, so that finding the zones a position lies in only has to test
+// the handful of zones sharing its section rather than every zone on the map
+public final class ZoneIndex<T> {
+    private static final int[] EMPTY = new int[0];
+
+    private final List<T> zones;
+    private final BlockBounds[] bounds;
+    private final Long2ObjectOpenHashMap<int[]> sections;
+
+    private ZoneIndex(List<T> zones, BlockBounds[] bounds, Long2ObjectOpenHashMap<int[]> sections) {
+        this.zones = zones;
+        this.bounds = bounds;
+        this.sections = sections;
+        this.sections.defaultReturnValue(EMPTY);
+    }
+
+    public static <T> ZoneIndex<T> build(List<T> zones, Function<T, BlockBounds> getBounds) {
+        BlockBounds[] bounds = new BlockBounds[zones.size()];
+        Long2ObjectOpenHashMap<IntArrayList> builder = new Long2ObjectOpenHashMap<>();
+
+        for (int id = 0; id < zones.size(); id++) {
+            BlockBounds zoneBounds = getBounds.apply(zones.get(id));
+            bounds[id] = zoneBounds;
+
+            BlockPos min = zoneBounds.min();
+            BlockPos max = zoneBounds.max();
+
+            for (int y = min.getY() >> 4; y <= max.getY() >> 4; y++) {
+                for (int z = min.getZ() >> 4; z <= max.getZ() >> 4; z++) {
+                    for (int x = min.getX() >> 4; x <= max.getX() >> 4; x++) {
+                        builder.computeIfAbsent(ChunkSectionPos.asLong(x, y, z), k -> new IntArrayList()).add(id);
+                    }
+                }
+            }
+        }
+
+        Long2ObjectOpenHashMap<int[]> sections = new Long2ObjectOpenHashMap<>(builder.size());
+        for (Long2ObjectMap.Entry<IntArrayList> entry : Long2ObjectMaps.fastIterable(builder)) {
+            sections.put(entry.getLongKey(), entry.getValue().toIntArray());
+        }
+
+        return new ZoneIndex<>(List.copyOf(zones), bounds, sections);
+    }
+
+    public int size() {
+        return this.zones.size();
+    }
+
+    public T get(int id) {
+        return this.zones.get(id);
+    }
+
+    // The ids of the zones sharing a section with this position. These must still be tested with contains!
+    public int[] candidatesAt(BlockPos pos) {
+        return this.sections.get(ChunkSectionPos.toLong(pos));
+    }
+
+    public boolean contains(int id, BlockPos pos) {
+        return this.bounds[id].contains(pos);
+    }
+
+    // Returns the id of the first zone containing this position, or -1 if there is none
+    public int findAt(BlockPos pos) {
+        for (int id : this.candidatesAt(pos)) {
+            if (this.bounds[id].contains(pos)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+}